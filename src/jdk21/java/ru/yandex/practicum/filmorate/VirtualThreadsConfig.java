@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Режим виртуальных потоков, включается свойством {@code filmorate.virtual-threads.enabled=true}. Каждый запрос
+ * Tomcat и каждая асинхронная задача MVC, включая потоковую выгрузку, выполняются в своем виртуальном потоке, поэтому
+ * ожидание ответа базы освобождает поток-носитель, а не занимает поток из пула в 200 потоков.
+ * <p>
+ * Класс собирается только с явно включенным профилем {@code virtual-threads} на JDK 21 и новее.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "filmorate.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+        log.info("Запросы выполняются в виртуальных потоках.");
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
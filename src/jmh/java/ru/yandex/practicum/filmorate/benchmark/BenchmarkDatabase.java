@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.storage.db.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Встроенная H2 в памяти со схемой и справочниками приложения, заполняемая тестовыми данными заданного объема.
+ */
+class BenchmarkDatabase {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int GENRES_PER_FILM = 2;
+
+    private final HikariDataSource dataSource;
+
+    final JdbcTemplate jdbcTemplate;
+    final GenreDbStorage genreStorage;
+    final MpaDbStorage mpaStorage;
+    final FilmDbStorage filmStorage;
+    final UserDbStorage userStorage;
+
+    static {
+        // Отладочные логи JdbcTemplate на каждый запрос искажают результаты замеров
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    BenchmarkDatabase() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:bench" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        this.dataSource = dataSource;
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        genreStorage = new GenreDbStorage(jdbcTemplate);
+        genreStorage.refresh();
+        mpaStorage = new MpaDbStorage(jdbcTemplate);
+        mpaStorage.refresh();
+        filmStorage = new FilmDbStorage(jdbcTemplate, genreStorage, mpaStorage);
+        userStorage = new UserDbStorage(jdbcTemplate);
+    }
+
+    void seedUsers(int users, int friendsPerUser) {
+        List<Object[]> userRows = new ArrayList<>();
+        for (long id = 1; id <= users; id++) {
+            userRows.add(new Object[]{id, "user" + id + "@mail.ru", "user" + id, "User " + id,
+                    LocalDate.of(1990, 1, 1)});
+        }
+        batchUpdate("insert into users (user_id, email, login, name, birthday) values (?, ?, ?, ?, ?)", userRows);
+        restartIdentity("users", "user_id", users);
+
+        List<Object[]> friendshipRows = new ArrayList<>();
+        for (long id = 1; id <= users; id++) {
+            for (int i = 1; i <= Math.min(friendsPerUser, users - 1); i++) {
+                friendshipRows.add(new Object[]{id, (id - 1 + i) % users + 1, i % 2 == 0});
+            }
+        }
+        batchUpdate("insert into friendships (user_id, friend_id, is_confirmed) values (?, ?, ?)", friendshipRows);
+    }
+
+    void seedFilms(int films, int likesPerFilm, int users) {
+        int genres = genreStorage.getAll().size();
+        int ratings = mpaStorage.getAll().size();
+
+        List<Object[]> filmRows = new ArrayList<>();
+        List<Object[]> genreRows = new ArrayList<>();
+        List<Object[]> likeRows = new ArrayList<>();
+        for (long id = 1; id <= films; id++) {
+            int likes = (int) Math.min(users, likesPerFilm * (1 + id % 3)); // Разное число лайков для топа
+            filmRows.add(new Object[]{id, "Фильм " + id, "Описание фильма " + id,
+                    LocalDate.of(1950 + (int) (id % 70), 1, 1), 90, (int) (id % ratings) + 1, likes});
+            for (int g = 0; g < GENRES_PER_FILM; g++) {
+                genreRows.add(new Object[]{(int) ((id + g) % genres) + 1, id});
+            }
+            for (int l = 0; l < likes; l++) {
+                likeRows.add(new Object[]{id, (id + l) % users + 1});
+            }
+        }
+        batchUpdate("insert into films (film_id, name, description, release_date, duration, mpa_id, likes_count) " +
+                "values (?, ?, ?, ?, ?, ?, ?)", filmRows);
+        batchUpdate("insert into film_genre (genre_id, film_id) values (?, ?)", genreRows);
+        batchUpdate("insert into likes (film_id, user_id) values (?, ?)", likeRows);
+        restartIdentity("films", "film_id", films);
+    }
+
+    void shutdown() {
+        jdbcTemplate.execute("shutdown");
+        dataSource.close();
+    }
+
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+
+    private void restartIdentity(String table, String column, long lastId) {
+        jdbcTemplate.execute("alter table " + table + " alter column " + column + " restart with " + (lastId + 1));
+    }
+}
@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmLikesIndex;
+import ru.yandex.practicum.filmorate.service.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FriendGraph;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение всех фильмов, топ популярных с фильтрами и без, рекомендации, поиск и постановка лайка на базе с заданным
+ * числом фильмов и лайков, с кэшем фильмов и без него.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FilmBenchmark {
+
+    private static final int USERS = 1_000;
+
+    @Param({"1000", "10000", "100000"})
+    private int films;
+
+    @Param({"10"})
+    private int likesPerFilm;
+
+    // 0 — кэш фильмов выключен
+    @Param({"0", "10000"})
+    private int cacheCapacity;
+
+    private BenchmarkDatabase database;
+    private FilmService filmService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedUsers(USERS, 0);
+        database.seedFilms(films, likesPerFilm, USERS);
+        FilmPopularityIndex popularityIndex = new FilmPopularityIndex(database.filmStorage);
+        popularityIndex.refresh();
+        FilmLikesIndex likesIndex = new FilmLikesIndex(database.filmStorage, 50, 1_000_000);
+        likesIndex.refresh();
+        FilmSearchIndex searchIndex = new FilmSearchIndex(database.filmStorage);
+        searchIndex.refresh();
+        UserService userService = new UserService(database.userStorage,
+                new FriendGraph(database.userStorage, 10_000, 1_000_000),
+                new EntityCache<>("users", 0, User::readOnlyCopy));
+        filmService = new FilmService(database.filmStorage, popularityIndex, likesIndex, searchIndex, userService,
+                database.genreStorage, database.mpaStorage,
+                new EntityCache<>("films", cacheCapacity, Film::readOnlyCopy));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public List<Film> getAll() {
+        return database.filmStorage.getAll();
+    }
+
+    @Benchmark
+    public List<Film> getTopFilms() {
+        return filmService.getTopFilms(10, null, null);
+    }
+
+    @Benchmark
+    public List<Film> getTopFilmsByGenreAndYear() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return filmService.getTopFilms(10, random.nextInt(1, 7), random.nextInt(1950, 2020));
+    }
+
+    @Benchmark
+    public List<Film> getRecommendations() {
+        return filmService.getRecommendations(ThreadLocalRandom.current().nextLong(1, USERS + 1), 10);
+    }
+
+    // Частое слово и префикс номера: кандидаты берутся по префиксу, частое слово проверяется по словам фильма
+    @Benchmark
+    public List<Film> search() {
+        return filmService.search("фильм " + ThreadLocalRandom.current().nextInt(100, 1000), 10, 0);
+    }
+
+    // Одна-две цифры: без минимальной длины префикса такой запрос перебирал бы диапазоны почти всех номеров
+    @Benchmark
+    public List<Film> searchShortPrefix() {
+        return filmService.search(String.valueOf(ThreadLocalRandom.current().nextInt(1, 100)), 10, 0);
+    }
+
+    // Лайк ставится и сразу снимается, чтобы объем данных не менялся между итерациями
+    @Benchmark
+    public Film addAndDeleteLike() {
+        long filmId = ThreadLocalRandom.current().nextLong(1, films + 1);
+        long userId = (filmId + 3L * likesPerFilm) % USERS + 1; // Пользователь, который не лайкал этот фильм
+        filmService.addLike(filmId, userId);
+        return filmService.deleteLike(filmId, userId);
+    }
+}
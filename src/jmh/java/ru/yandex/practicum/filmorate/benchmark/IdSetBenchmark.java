@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.IdSet;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение {@link IdSet} с прежним {@code HashSet<Long>} для лайков фильма. Расход памяти на построение множества
+ * виден в метрике {@code gc.alloc.rate.norm} профилировщика {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class IdSetBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private long[] ids;
+    private long[] otherIds;
+    private Set<Long> hashSet;
+    private Set<Long> otherHashSet;
+    private IdSet idSet;
+    private IdSet otherIdSet;
+    private long probe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        ids = random.longs(size, 1, size * 4L).sorted().toArray();
+        otherIds = random.longs(size, 1, size * 4L).sorted().toArray();
+        hashSet = buildHashSet(ids);
+        otherHashSet = buildHashSet(otherIds);
+        idSet = buildIdSet(ids);
+        otherIdSet = buildIdSet(otherIds);
+        probe = ids[size / 2];
+    }
+
+    @Benchmark
+    public Set<Long> buildHashSet() {
+        return buildHashSet(ids);
+    }
+
+    @Benchmark
+    public IdSet buildIdSet() {
+        return buildIdSet(ids);
+    }
+
+    @Benchmark
+    public boolean containsHashSet() {
+        return hashSet.contains(probe);
+    }
+
+    @Benchmark
+    public boolean containsIdSet() {
+        return idSet.contains(probe);
+    }
+
+    @Benchmark
+    public Set<Long> intersectHashSet() {
+        Set<Long> result = new HashSet<>(hashSet);
+        result.retainAll(otherHashSet);
+        return result;
+    }
+
+    @Benchmark
+    public IdSet intersectIdSet() {
+        return idSet.intersect(otherIdSet);
+    }
+
+    private static Set<Long> buildHashSet(long[] values) {
+        Set<Long> set = new HashSet<>();
+        for (long value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    private static IdSet buildIdSet(long[] values) {
+        IdSet set = new IdSet();
+        for (long value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+}
\ No newline at end of file
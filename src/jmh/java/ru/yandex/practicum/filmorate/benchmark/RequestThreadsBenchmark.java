@@ -0,0 +1,171 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.util.ClassUtils;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность HTTP-запросов при медленной базе: пул потоков Tomcat против виртуальных потоков.
+ * Приложение запускается целиком, каждый SQL-запрос задерживается на {@code latencyMs}, клиент держит
+ * столько параллельных запросов, сколько потоков JMH ({@code -t}, по умолчанию 400 — вдвое больше пула Tomcat).
+ * Вариант {@code virtualThreads=true} требует сборки с профилем {@code virtual-threads} на JDK 21 и новее.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(400)
+@Fork(1)
+public class RequestThreadsBenchmark {
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    // На машине с малым числом ядер при 20 мс процессор насыщается раньше пула Tomcat
+    @Param({"20", "500"})
+    private int latencyMs;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI friendsUri;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (virtualThreads && !ClassUtils.isPresent("ru.yandex.practicum.filmorate.VirtualThreadsConfig", null)) {
+            throw new IllegalStateException("Режим виртуальных потоков собирается только с профилем virtual-threads.");
+        }
+        // Аргументы командной строки, а не properties(): те ниже по приоритету, чем application.properties
+        context = new SpringApplicationBuilder(FilmorateApplication.class, SlowDatabaseConfig.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                "--spring.datasource.hikari.maximum-pool-size=500",
+                "--logging.level.root=WARN",
+                "--logging.level.ru.yandex.practicum=WARN",
+                "--filmorate.counters.startup=none",
+                "--filmorate.virtual-threads.enabled=" + virtualThreads,
+                "--benchmark.sql-latency-ms=" + latencyMs);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        for (int i = 1; i <= 2; i++) {
+            send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/users"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"user" + i + "@mail.ru\",\"login\":\"user"
+                            + i + "\",\"name\":\"User\",\"birthday\":\"2000-01-01\"}"))
+                    .build());
+        }
+        send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/users/1/friends/2"))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build());
+        friendsUri = URI.create("http://localhost:" + port + "/users/1/friends");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // Список друзей не кэшируется, поэтому каждый HTTP-запрос идет в базу
+    @Benchmark
+    public int getFriends() throws Exception {
+        return send(HttpRequest.newBuilder(friendsUri).build());
+    }
+
+    private int send(HttpRequest request) throws Exception {
+        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status != 200) {
+            throw new IllegalStateException("Запрос " + request.uri() + " завершился со статусом " + status);
+        }
+        return status;
+    }
+
+    /**
+     * Задержка на каждое выполнение SQL-запроса, как при ожидании ответа удаленной базы: соединение уже получено
+     * из пула и занято, поток ждет внутри {@code execute*}. Задержка выдерживается до вызова драйвера и вне его
+     * блокировок, как у сетевого драйвера, который ждет ответа без {@code synchronized}. Класс без
+     * {@code @Configuration}, чтобы сканирование компонентов не подхватило его в тестах приложения.
+     */
+    static class SlowDatabaseConfig {
+
+        @Bean
+        static BeanPostProcessor slowDataSourcePostProcessor(Environment environment) {
+            long latencyMs = environment.getRequiredProperty("benchmark.sql-latency-ms", Long.class);
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource)) {
+                        return bean;
+                    }
+                    return new DelegatingDataSource((DataSource) bean) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            return slow(Connection.class, super.getConnection(), latencyMs);
+                        }
+                    };
+                }
+            };
+        }
+
+        // Соединение отдает обертки над запросами, каждый execute* запроса ждет latencyMs
+        private static <T> T slow(Class<T> type, T target, long latencyMs) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                if (method.getName().startsWith("execute")) {
+                    try {
+                        Thread.sleep(latencyMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof CallableStatement) {
+                    return slow(CallableStatement.class, (CallableStatement) result, latencyMs);
+                }
+                if (result instanceof PreparedStatement) {
+                    return slow(PreparedStatement.class, (PreparedStatement) result, latencyMs);
+                }
+                if (result instanceof Statement) {
+                    return slow(Statement.class, (Statement) result, latencyMs);
+                }
+                return result;
+            };
+            return type.cast(Proxy.newProxyInstance(RequestThreadsBenchmark.class.getClassLoader(),
+                    new Class<?>[]{type}, handler));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FriendGraph;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общие друзья, предложения друзей и обновление пользователя на базе с заданным числом друзей у каждого пользователя.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class UserBenchmark {
+
+    @Param({"10000"})
+    private int users;
+
+    @Param({"10", "100", "1000"})
+    private int friendsPerUser;
+
+    private BenchmarkDatabase database;
+    private UserService userService;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seedUsers(users, friendsPerUser);
+        FriendGraph friendGraph = new FriendGraph(database.userStorage, 10_000, 1_000_000);
+        friendGraph.refresh();
+        userService = new UserService(database.userStorage, friendGraph,
+                new EntityCache<>("users", 0, User::readOnlyCopy));
+        user = database.userStorage.getUserById(1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return userService.getCommonFriends(1L, 2L);
+    }
+
+    @Benchmark
+    public List<User> getFriendSuggestions() {
+        return userService.getFriendSuggestions(1L, 10);
+    }
+
+    @Benchmark
+    public User update() {
+        return database.userStorage.update(user);
+    }
+}
@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public EntityCache<Long, Film> filmCache(@Value("${filmorate.cache.films.capacity:10000}") int capacity) {
+        return new EntityCache<>("films", capacity, Film::readOnlyCopy);
+    }
+
+    @Bean
+    public EntityCache<Long, User> userCache(@Value("${filmorate.cache.users.capacity:10000}") int capacity) {
+        return new EntityCache<>("users", capacity, User::readOnlyCopy);
+    }
+}
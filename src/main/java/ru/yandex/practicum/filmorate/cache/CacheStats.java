@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class CacheStats {
+    String name;
+    int capacity;
+    int size;
+    long hits;
+    long misses;
+    double hitRate;
+    long evictions;
+    long invalidations;
+}
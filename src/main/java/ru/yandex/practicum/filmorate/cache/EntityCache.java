@@ -0,0 +1,228 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Ограниченный кэш сущностей с приближенным вытеснением давно не использованных записей (алгоритм CLOCK).
+ * <p>
+ * Чтение не берет блокировку: запись ищется в {@link ConcurrentHashMap} и получает отметку об обращении.
+ * Вставка и инвалидация идут под общей блокировкой. Когда кэш заполнен, стрелка обходит ячейки по кругу,
+ * снимает отметки и вытесняет первую запись без отметки, то есть запись, к которой не обращались с прошлого
+ * прохода стрелки.
+ * <p>
+ * Загрузка идет вне блокировки. Чтобы загрузка, начатая до изменения сущности, не положила в кэш устаревшее
+ * значение, каждый ключ относится к одной из полос со счетчиком инвалидаций: значение кладется в кэш,
+ * только если счетчик его полосы не изменился за время загрузки.
+ * <p>
+ * Кэш один раз снимает со значения снимок только для чтения и отдает этот снимок всем читателям без копирования,
+ * поэтому попадание в кэш ничего не выделяет. Загрузчик отдает вызывающему свое значение, а в кэш кладется снимок.
+ * При нулевой емкости кэш выключен и каждый запрос идет в загрузчик.
+ */
+public class EntityCache<K, V> {
+
+    private static final int STRIPES = 64;
+
+    private final String name;
+    private final int capacity;
+    private final UnaryOperator<V> snapshot;
+    private final ConcurrentHashMap<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+    private final AtomicLongArray epochs = new AtomicLongArray(STRIPES);
+
+    // Ячейки и стрелка меняются только под блокировкой
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Node<K, V>[] slots;
+    private final int[] freeSlots;
+    private int freeCount;
+    private int hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    // Для неизменяемых значений
+    public EntityCache(String name, int capacity) {
+        this(name, capacity, UnaryOperator.identity());
+    }
+
+    @SuppressWarnings("unchecked")
+    public EntityCache(String name, int capacity, UnaryOperator<V> snapshot) {
+        this.name = name;
+        this.capacity = capacity;
+        this.snapshot = snapshot;
+        this.slots = (Node<K, V>[]) new Node[capacity];
+        this.freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+    }
+
+    public V get(K key, Function<K, V> loader) {
+        V value = lookup(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+
+        misses.increment();
+        long epoch = epochs.get(stripe(key));
+        value = loader.apply(key);
+        put(key, value, epoch);
+        return value;
+    }
+
+    /**
+     * Отдает значения в порядке ключей. Недостающие значения загружаются одним вызовом {@code loader},
+     * который может вернуть не все запрошенные ключи.
+     */
+    public List<V> getAll(List<K> keys, Function<List<K>, List<V>> loader, Function<V, K> keyOf) {
+        Map<K, V> found = new HashMap<>();
+        List<K> missing = new ArrayList<>();
+        for (K key : keys) {
+            V value = lookup(key);
+            if (value != null) {
+                found.put(key, value);
+            } else {
+                missing.add(key);
+            }
+        }
+        hits.add(found.size());
+        misses.add(missing.size());
+
+        if (!missing.isEmpty()) {
+            Map<K, Long> epochByKey = new HashMap<>();
+            missing.forEach(key -> epochByKey.put(key, epochs.get(stripe(key))));
+            for (V value : loader.apply(missing)) {
+                K key = keyOf.apply(value);
+                found.put(key, value);
+                put(key, value, epochByKey.get(key));
+            }
+        }
+
+        List<V> result = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            epochs.incrementAndGet(stripe(key));
+            Node<K, V> node = entries.remove(key);
+            if (node != null) {
+                slots[node.slot] = null;
+                freeSlots[freeCount++] = node.slot;
+            }
+        } finally {
+            lock.unlock();
+        }
+        invalidations.increment();
+    }
+
+    public CacheStats getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+        return CacheStats.builder()
+                .name(name)
+                .capacity(capacity)
+                .size(size())
+                .hits(hitCount)
+                .misses(missCount)
+                .hitRate(requests == 0 ? 0 : (double) hitCount / requests)
+                .evictions(evictions.sum())
+                .invalidations(invalidations.sum())
+                .build();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private V lookup(K key) {
+        if (capacity == 0) {
+            return null;
+        }
+        Node<K, V> node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        // Запись только при смене отметки, чтобы частые чтения одной записи не перезаписывали ее строку кэша
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    private void put(K key, V value, long epoch) {
+        if (capacity == 0 || value == null) {
+            return;
+        }
+        V readOnly = snapshot.apply(value);
+        lock.lock();
+        try {
+            if (epochs.get(stripe(key)) != epoch) {
+                return;
+            }
+            Node<K, V> current = entries.get(key);
+            if (current != null) {
+                current.value = readOnly;
+                return;
+            }
+            int slot = freeCount > 0 ? freeSlots[--freeCount] : evict();
+            Node<K, V> node = new Node<>(key, readOnly, slot);
+            slots[slot] = node;
+            entries.put(key, node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Вызывается под блокировкой при заполненном кэше, возвращает освободившуюся ячейку
+    private int evict() {
+        while (true) {
+            Node<K, V> node = slots[hand];
+            int slot = hand;
+            hand = (hand + 1) % capacity;
+            if (node.referenced) {
+                node.referenced = false;
+                continue;
+            }
+            entries.remove(node.key);
+            evictions.increment();
+            return slot;
+        }
+    }
+
+    private static int stripe(Object key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final int slot;
+        volatile V value;
+        volatile boolean referenced;
+
+        Node(K key, V value, int slot) {
+            this.key = key;
+            this.value = value;
+            this.slot = slot;
+        }
+    }
+}
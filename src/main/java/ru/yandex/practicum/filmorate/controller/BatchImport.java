@@ -0,0 +1,157 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
+import ru.yandex.practicum.filmorate.metrics.SqlStatements;
+import ru.yandex.practicum.filmorate.model.AbstractEntity;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+@Slf4j
+final class BatchImport {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private BatchImport() {
+    }
+
+    /**
+     * Читает записи из JSON-массива или NDJSON по одной и вставляет их пакетами по {@link #CHUNK_SIZE}.
+     * Запись, которая не читается, не проходит валидацию или проверку {@code check}, попадает в ошибки,
+     * остальные записи загружаются. Если база отклоняет пакет, его записи вставляются по одной, и в ошибки
+     * попадают только отклоненные базой. После синтаксической ошибки JSON чтение прекращается.
+     */
+    static <T extends AbstractEntity<Long>> BatchResult load(ObjectMapper objectMapper, Validator validator,
+                                                           InputStream body, Class<T> type, Consumer<T> check,
+                                                           UnaryOperator<List<T>> createAll) throws IOException {
+        BatchResult result = new BatchResult();
+        List<T> chunk = new ArrayList<>();
+        List<Integer> chunkIndexes = new ArrayList<>();
+
+        try (MappingIterator<T> items = objectMapper.readerFor(type).readValues(body)) {
+            for (int index = 0; ; index++) {
+                T item;
+                try {
+                    if (!items.hasNextValue()) {
+                        break;
+                    }
+                    item = items.nextValue();
+                } catch (JsonProcessingException e) {
+                    result.getIds().add(null);
+                    result.reject(index, "некорректная запись: " + e.getOriginalMessage());
+                    if (e instanceof JsonParseException) {
+                        break;
+                    }
+                    continue;
+                }
+
+                result.getIds().add(null);
+                if (!validate(result, index, validator, item, check)) {
+                    continue;
+                }
+
+                chunk.add(item);
+                chunkIndexes.add(index);
+                if (chunk.size() == CHUNK_SIZE) {
+                    flush(result, chunk, chunkIndexes, createAll);
+                }
+            }
+        }
+
+        flush(result, chunk, chunkIndexes, createAll);
+        return result;
+    }
+
+    private static <T> boolean validate(BatchResult result, int index, Validator validator, T item,
+                                        Consumer<T> check) {
+        Set<ConstraintViolation<T>> violations = validator.validate(item);
+        if (!violations.isEmpty()) {
+            result.reject(index, violations.iterator().next().getMessage());
+            return false;
+        }
+        try {
+            check.accept(item);
+        } catch (RuntimeException e) {
+            // Ошибка проверки отклоняет только эту запись, а не всю загрузку после уже вставленных пакетов
+            reject(result, index, e);
+            return false;
+        }
+        return true;
+    }
+
+    private static <T extends AbstractEntity<Long>> void flush(BatchResult result, List<T> chunk,
+                                                               List<Integer> chunkIndexes,
+                                                               UnaryOperator<List<T>> createAll) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            insert(result, chunk, chunkIndexes, createAll);
+        } catch (RuntimeException e) {
+            // Пакет откатывается целиком: записи вставляются по одной, и отклоняются только те, на которых ошибка
+            log.info("Пакет из {} записей не загружен, записи загружаются по одной: {}", chunk.size(),
+                    e.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    insert(result, List.of(chunk.get(i)), List.of(chunkIndexes.get(i)), createAll);
+                } catch (RuntimeException itemError) {
+                    reject(result, chunkIndexes.get(i), itemError);
+                }
+            }
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+
+    private static <T extends AbstractEntity<Long>> void insert(BatchResult result, List<T> items,
+                                                                List<Integer> indexes,
+                                                                UnaryOperator<List<T>> createAll) {
+        SqlStatements.onChunk();
+        List<T> created = createAll.apply(items);
+        for (int i = 0; i < created.size(); i++) {
+            result.getIds().set(indexes.get(i), created.get(i).getId());
+        }
+    }
+
+    // Ожидаемый отказ пишется в лог одной строкой, стек нужен только для непредвиденной ошибки
+    private static void reject(BatchResult result, int index, RuntimeException e) {
+        String reason = describe(e);
+        if (reason == null) {
+            log.warn("Запись {} загрузки не загружена из-за непредвиденной ошибки.", index, e);
+            reason = "Произошла непредвиденная ошибка.";
+        } else {
+            log.info("Запись {} загрузки отклонена: {}", index, reason);
+        }
+        result.reject(index, reason);
+    }
+
+    // Причина отказа без текста SQL-ошибки, null для непредвиденной ошибки
+    private static String describe(RuntimeException e) {
+        if (e instanceof DataNotFoundException) {
+            return e.getMessage();
+        }
+        if (e instanceof DuplicateKeyException) {
+            return "значение уникального поля уже есть в базе или выше в загрузке";
+        }
+        if (e instanceof DataIntegrityViolationException) {
+            return "запись нарушает ограничения базы данных";
+        }
+        return null;
+    }
+}
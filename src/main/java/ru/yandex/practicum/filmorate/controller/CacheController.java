@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.cache.CacheStats;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.metrics.StatementBudget;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Slf4j
+@RestController
+@RequestMapping("/internal/caches")
+@RequiredArgsConstructor
+public class CacheController {
+
+    private final List<EntityCache<?, ?>> caches;
+
+    @GetMapping
+    @StatementBudget(0)
+    public List<CacheStats> getStats() {
+        log.info("Поступил запрос на получение статистики кэшей.");
+        return caches.stream()
+                .map(EntityCache::getStats)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.metrics.StatementBudget;
+import ru.yandex.practicum.filmorate.model.CounterDrift;
+import ru.yandex.practicum.filmorate.service.CounterService;
+
+@Slf4j
+@RestController
+@RequestMapping("/internal/counters")
+@RequiredArgsConstructor
+public class CounterController {
+
+    private final CounterService counterService;
+
+    @GetMapping("/drift")
+    @StatementBudget(2)
+    public CounterDrift checkDrift() {
+        log.info("Поступил запрос на проверку счетчиков лайков и друзей.");
+        return counterService.checkDrift();
+    }
+
+    @PostMapping("/backfill")
+    @StatementBudget(5)
+    public CounterDrift backfill() {
+        log.info("Поступил запрос на пересчет счетчиков лайков и друзей.");
+        return counterService.backfill();
+    }
+}
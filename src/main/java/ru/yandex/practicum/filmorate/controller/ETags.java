@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.function.LongSupplier;
+
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    // Версия запрашивается только при наличии If-None-Match; при совпадении Spring отвечает 304 с ETag
+    static boolean isNotModified(WebRequest request, LongSupplier version) {
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(of(version.getAsLong()));
+    }
+}
@@ -1,65 +1,141 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.metrics.StatementBudget;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import javax.validation.Validator;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @Slf4j
 @RestController
 @RequestMapping("/films")
+@Validated
 public class FilmController {
 
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper, Validator validator) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
     }
 
     @GetMapping
-    public List<Film> getAll() {
-        log.info("Поступил запрос на получение списка всех фильмов.");
-        return filmService.getAll();
+    @StatementBudget(3)
+    public ResponseEntity<List<Film>> getAll(
+            @RequestParam(defaultValue = "0")
+            @PositiveOrZero(message = "after не может быть отрицательным") long after,
+            @RequestParam(defaultValue = Pagination.DEFAULT_LIMIT)
+            @Positive(message = "limit должен быть положительным")
+            @Max(value = Pagination.MAX_LIMIT, message = Pagination.LIMIT_TOO_LARGE) int limit,
+            @RequestParam(defaultValue = "false") boolean all) {
+        if (all) {
+            log.info("Поступил запрос на получение списка всех фильмов.");
+            return ResponseEntity.ok(filmService.getAll());
+        }
+        log.info("Поступил запрос на получение страницы фильмов после id={} (limit={}).", after, limit);
+        return Pagination.page(filmService.getPage(after, limit), limit);
+    }
+
+    @GetMapping(value = "/export", produces = NdjsonExport.MEDIA_TYPE)
+    @StatementBudget(3)
+    public ResponseEntity<StreamingResponseBody> export() {
+        log.info("Поступил запрос на выгрузку всех фильмов.");
+        return NdjsonExport.response(objectMapper, filmService::streamAll);
     }
 
     @PostMapping
+    @StatementBudget(2)
     public Film create(@Valid @RequestBody Film film) {
         log.info("Поступил запрос на создание фильма {}.", film);
         return filmService.create(film);
     }
 
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NdjsonExport.MEDIA_TYPE})
+    @StatementBudget(value = 0, perChunk = 2)
+    public BatchResult createAll(InputStream body) throws IOException {
+        log.info("Поступил запрос на пакетную загрузку фильмов.");
+        BatchResult result = BatchImport.load(objectMapper, validator, body, Film.class, filmService::checkReferences,
+                filmService::createAll);
+        log.info("Пакетная загрузка фильмов завершена: записей {}, ошибок {}.", result.getIds().size(),
+                result.getErrors().size());
+        return result;
+    }
+
     @PutMapping
+    @StatementBudget(8)
     public Film update(@Valid @RequestBody Film film) {
         log.info("Поступил запрос на обновление фильма {}.", film);
         return filmService.update(film);
     }
 
     @GetMapping("/{id}")
-    public Film getFilmById(@PathVariable Long id) {
+    @StatementBudget(3)
+    public ResponseEntity<Film> getFilmById(@PathVariable Long id, WebRequest request) {
         log.info("Поступил запрос на получение фильма с id={}.", id);
-        return filmService.getFilmById(id);
+        if (ETags.isNotModified(request, () -> filmService.getFilmVersion(id))) {
+            return null;
+        }
+        Film film = filmService.getFilmById(id);
+        return ResponseEntity.ok().eTag(ETags.of(film.getVersion())).body(film);
     }
 
     @PutMapping("/{id}/like/{userId}")
+    @StatementBudget(5)
     public Film addLike(@PathVariable Long id, @PathVariable Long userId) {
         log.info("Поступил запрос на добавление лайка фильму с id={} от userId={}.", id, userId);
         return filmService.addLike(id, userId);
     }
 
     @DeleteMapping("/{id}/like/{userId}")
+    @StatementBudget(5)
     public Film deleteLike(@PathVariable Long id, @PathVariable Long userId) {
         log.info("Поступил запрос на удаление лайка фильма с id={} от userId={}.", id, userId);
         return filmService.deleteLike(id, userId);
     }
 
+    @GetMapping("/search")
+    @StatementBudget(3)
+    public List<Film> search(@RequestParam @NotBlank(message = "q не может быть пустым") String q,
+                             @RequestParam(defaultValue = "10")
+                             @Positive(message = "limit должен быть положительным")
+                             @Max(value = Pagination.MAX_LIMIT, message = Pagination.LIMIT_TOO_LARGE) int limit,
+                             @RequestParam(defaultValue = "0")
+                             @PositiveOrZero(message = "offset не может быть отрицательным") int offset) {
+        log.info("Поступил запрос на поиск фильмов по строке \"{}\" (limit={}, offset={}).", q, limit, offset);
+        return filmService.search(q, limit, offset);
+    }
+
     @GetMapping("/popular")
-    public List<Film> getTopFilms(@RequestParam(defaultValue = "10", required = false) Integer count) {
-        log.info("Поступил запрос на получение списка топ-{} фильмов.", count);
-        return filmService.getTopFilms(count);
+    @StatementBudget(3)
+    public List<Film> getTopFilms(@RequestParam(defaultValue = "10")
+                                  @Positive(message = "count должен быть положительным")
+                                  @Max(value = Pagination.MAX_LIMIT, message = Pagination.COUNT_TOO_LARGE)
+                                  int count,
+                                  @RequestParam(required = false) Integer genreId,
+                                  @RequestParam(required = false) Integer year) {
+        log.info("Поступил запрос на получение списка топ-{} фильмов (genreId={}, year={}).", count, genreId, year);
+        return filmService.getTopFilms(count, genreId, year);
     }
 }
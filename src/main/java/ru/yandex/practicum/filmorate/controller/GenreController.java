@@ -6,6 +6,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.metrics.StatementBudget;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
@@ -20,12 +21,14 @@ public class GenreController {
     private final GenreService genreService;
 
     @GetMapping
+    @StatementBudget(0)
     public List<Genre> getAll() {
         log.info("Поступил запрос на получение списка всех жанров.");
         return genreService.getAll();
     }
 
     @GetMapping("/{id}")
+    @StatementBudget(0)
     public Genre getGenreById(@PathVariable Integer id) {
         log.info("Поступил запрос на получение жанра с id={}.", id);
         return genreService.getGenreById(id);
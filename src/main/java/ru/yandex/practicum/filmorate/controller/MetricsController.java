@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.metrics.MetricsRegistry;
+import ru.yandex.practicum.filmorate.metrics.StatementBudget;
+
+@Slf4j
+@RestController
+@RequestMapping("/internal/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private final MetricsRegistry registry;
+
+    @GetMapping(produces = "text/plain; version=0.0.4; charset=utf-8")
+    @StatementBudget(0)
+    public String getMetrics() {
+        log.info("Поступил запрос на получение метрик.");
+        return registry.scrape();
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.metrics.StatementBudget;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.MpaService;
 
@@ -20,12 +21,14 @@ public class MpaController {
     private final MpaService mpaService;
 
     @GetMapping
+    @StatementBudget(0)
     public List<Mpa> getAll() {
         log.info("Поступил запрос на получение списка всех MPA рейтингов.");
         return mpaService.getAll();
     }
 
     @GetMapping("/{id}")
+    @StatementBudget(0)
     public Mpa getMpaById(@PathVariable Integer id) {
         log.info("Поступил запрос на получение MPA рейтинга с id={}", id);
         return mpaService.getMpaById(id);
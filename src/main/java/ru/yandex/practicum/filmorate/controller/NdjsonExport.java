@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.metrics.SqlStatements;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+final class NdjsonExport {
+
+    static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private NdjsonExport() {
+    }
+
+    // Каждая запись пишется в ответ отдельной строкой сразу после чтения, весь список в памяти не собирается.
+    // Тип ответа задается явно: produces у потокового ответа в заголовок Content-Type не попадает
+    static <T> ResponseEntity<StreamingResponseBody> response(ObjectMapper objectMapper,
+                                                               Consumer<Consumer<T>> source) {
+        // Запросы к БД идут в потоке, который пишет ответ, и учитываются в областях исходного запроса
+        List<SqlStatements.Scope> scopes = SqlStatements.attached();
+        StreamingResponseBody body = outputStream -> {
+            scopes.forEach(SqlStatements.Scope::attach);
+            try {
+                source.accept(item -> {
+                    try {
+                        outputStream.write(objectMapper.writeValueAsBytes(item));
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                scopes.forEach(SqlStatements.Scope::close);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(MEDIA_TYPE)).body(body);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.model.AbstractEntity;
+
+import java.util.List;
+
+final class Pagination {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String DEFAULT_LIMIT = "100";
+    static final int MAX_LIMIT = 1000;
+    static final String LIMIT_TOO_LARGE = "limit не может быть больше " + MAX_LIMIT;
+    static final String COUNT_TOO_LARGE = "count не может быть больше " + MAX_LIMIT;
+
+    private Pagination() {
+    }
+
+    // Курсор следующей страницы — id последней записи, передается только для полной страницы
+    static <T extends AbstractEntity<Long>> ResponseEntity<List<T>> page(List<T> items, int limit) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (items.size() == limit) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(items.get(items.size() - 1).getId()));
+        }
+        return response.body(items);
+    }
+}
@@ -1,71 +1,162 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.metrics.StatementBudget;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
+import javax.validation.Validator;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @Slf4j
 @RestController
 @RequestMapping("/users")
+@Validated
 public class UserController {
 
     private final UserService userService;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, FilmService filmService, ObjectMapper objectMapper,
+                          Validator validator) {
         this.userService = userService;
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
     }
 
     @GetMapping
-    public List<User> getAll() {
-        log.info("Поступил запрос на получение списка всех пользователей.");
-        return userService.getAll();
+    @StatementBudget(2)
+    public ResponseEntity<List<User>> getAll(
+            @RequestParam(defaultValue = "0")
+            @PositiveOrZero(message = "after не может быть отрицательным") long after,
+            @RequestParam(defaultValue = Pagination.DEFAULT_LIMIT)
+            @Positive(message = "limit должен быть положительным")
+            @Max(value = Pagination.MAX_LIMIT, message = Pagination.LIMIT_TOO_LARGE) int limit,
+            @RequestParam(defaultValue = "false") boolean all) {
+        if (all) {
+            log.info("Поступил запрос на получение списка всех пользователей.");
+            return ResponseEntity.ok(userService.getAll());
+        }
+        log.info("Поступил запрос на получение страницы пользователей после id={} (limit={}).", after, limit);
+        return Pagination.page(userService.getPage(after, limit), limit);
+    }
+
+    @GetMapping(value = "/export", produces = NdjsonExport.MEDIA_TYPE)
+    @StatementBudget(2)
+    public ResponseEntity<StreamingResponseBody> export() {
+        log.info("Поступил запрос на выгрузку всех пользователей.");
+        return NdjsonExport.response(objectMapper, userService::streamAll);
     }
 
     @PostMapping
+    @StatementBudget(1)
     public User create(@Valid @RequestBody User user) {
         log.info("Поступил запрос на добавление пользователя {}.", user);
         return userService.create(user);
     }
 
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NdjsonExport.MEDIA_TYPE})
+    @StatementBudget(value = 0, perChunk = 1)
+    public BatchResult createAll(InputStream body) throws IOException {
+        log.info("Поступил запрос на пакетную загрузку пользователей.");
+        BatchResult result = BatchImport.load(objectMapper, validator, body, User.class, user -> { },
+                userService::createAll);
+        log.info("Пакетная загрузка пользователей завершена: записей {}, ошибок {}.", result.getIds().size(),
+                result.getErrors().size());
+        return result;
+    }
+
     @PutMapping
+    @StatementBudget(5)
     public User update(@Valid @RequestBody User user) {
         log.info("Поступил запрос на обновление пользователя {}.", user);
         return userService.update(user);
     }
 
     @GetMapping("/{id}")
-    public User getUserById(@PathVariable Long id) {
+    @StatementBudget(2)
+    public ResponseEntity<User> getUserById(@PathVariable Long id, WebRequest request) {
         log.info("Поступил запрос на получение пользователя по id={}.", id);
-        return userService.getUserById(id);
+        if (ETags.isNotModified(request, () -> userService.getUserVersion(id))) {
+            return null;
+        }
+        User user = userService.getUserById(id);
+        return ResponseEntity.ok().eTag(ETags.of(user.getVersion())).body(user);
     }
 
     @PutMapping("/{id}/friends/{friendId}")
+    @StatementBudget(4)
     public User addFriend(@PathVariable Long id, @PathVariable Long friendId) {
         log.info("Поступил запрос от userId={} на добавление друга friendId={}.", id, friendId);
         return userService.addFriend(id, friendId);
     }
 
     @DeleteMapping("/{id}/friends/{friendId}")
+    @StatementBudget(4)
     public User deleteFriend(@PathVariable Long id, @PathVariable Long friendId) {
         log.info("Поступил запрос от userId={} на удаление друга friendId={}.", id, friendId);
         return userService.deleteFriend(id, friendId);
     }
 
     @GetMapping("/{id}/friends")
-    public List<User> getFriends(@PathVariable Long id) {
-        log.info("Поступил запрос на получение списка друзей пользователя с id={}.", id);
-        return userService.getFriends(id);
+    @StatementBudget(2)
+    public List<User> getFriends(@PathVariable Long id,
+                                 @RequestParam(required = false)
+                                 @Positive(message = "limit должен быть положительным") Integer limit,
+                                 @RequestParam(defaultValue = "0")
+                                 @PositiveOrZero(message = "offset не может быть отрицательным") int offset) {
+        log.info("Поступил запрос на получение списка друзей пользователя с id={} (limit={}, offset={}).", id, limit,
+                offset);
+        return userService.getFriends(id, limit, offset);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
+    @StatementBudget(3)
     public List<User> getCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
         log.info("Поступил запрос на получение списка общих друзей id={} и otherId={}.", id, otherId);
         return userService.getCommonFriends(id, otherId);
     }
+
+    @GetMapping("/{id}/friends/suggestions")
+    @StatementBudget(3)
+    public List<User> getFriendSuggestions(@PathVariable Long id,
+                                           @RequestParam(defaultValue = "${filmorate.friends.suggestions.top-n:10}")
+                                           @Positive(message = "count должен быть положительным")
+                                           @Max(value = Pagination.MAX_LIMIT, message = Pagination.COUNT_TOO_LARGE)
+                                           int count) {
+        log.info("Поступил запрос на получение предложений друзей для пользователя с id={} (count={}).", id, count);
+        return userService.getFriendSuggestions(id, count);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    @StatementBudget(4)
+    public List<Film> getRecommendations(@PathVariable Long id,
+                                         @RequestParam(defaultValue = "10")
+                                         @Positive(message = "count должен быть положительным")
+                                         @Max(value = Pagination.MAX_LIMIT, message = Pagination.COUNT_TOO_LARGE)
+                                         int count) {
+        log.info("Поступил запрос на получение рекомендаций фильмов для пользователя с id={} (count={}).", id, count);
+        return filmService.getRecommendations(id, count);
+    }
 }
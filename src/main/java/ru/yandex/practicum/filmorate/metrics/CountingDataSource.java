@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Обертка над источником данных, которая сообщает {@link SqlStatements} о каждом выполненном запросе и его тексте.
+ * Пакет, отправленный через {@code executeBatch}, считается одним запросом: это один обмен с базой.
+ */
+class CountingDataSource extends DelegatingDataSource {
+
+    CountingDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(Connection.class, super.getConnection(), null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(Connection.class, super.getConnection(username, password), null);
+    }
+
+    private static <T> T wrap(Class<T> type, T target, String preparedSql) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            // Запрос учитывается до выполнения: запрос, завершившийся ошибкой, тоже дошел до базы
+            if (method.getName().startsWith("execute")) {
+                boolean hasSql = args != null && args.length > 0 && args[0] instanceof String;
+                SqlStatements.onStatement(hasSql ? (String) args[0] : preparedSql);
+            }
+            return wrapStatement(invoke(target, method, args), args);
+        };
+        return type.cast(Proxy.newProxyInstance(CountingDataSource.class.getClassLoader(),
+                new Class<?>[]{type}, handler));
+    }
+
+    private static Object wrapStatement(Object result, Object[] args) {
+        String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+        if (result instanceof CallableStatement) {
+            return wrap(CallableStatement.class, (CallableStatement) result, sql);
+        }
+        if (result instanceof PreparedStatement) {
+            return wrap(PreparedStatement.class, (PreparedStatement) result, sql);
+        }
+        if (result instanceof Statement) {
+            return wrap(Statement.class, (Statement) result, null);
+        }
+        return result;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма неотрицательных значений с логарифмическими корзинами: на каждую степень двойки приходится
+ * восемь корзин, поэтому квантили считаются с погрешностью не больше 12,5%. Значения до 2^40 различаются,
+ * большие попадают в последнюю корзину.
+ * <p>
+ * Запись не берет блокировок: каждая корзина — {@link LongAdder}, который под нагрузкой разносит
+ * инкременты разных потоков по отдельным ячейкам. Квантили считаются по снимку корзин, сделанному без остановки
+ * записи, поэтому они приблизительны и при параллельной записи.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        long nonNegative = Math.max(value, 0);
+        buckets[bucketOf(nonNegative)].increment();
+        count.increment();
+        sum.add(nonNegative);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Возвращает верхнюю границу корзины, в которую попадает квантиль {@code quantile} из интервала (0, 1].
+     */
+    public long getQuantile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min((exponent - SUB_BITS + 1) * SUB_BUCKETS + subBucket, BUCKETS - 1);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Реестр гистограмм приложения. Гистограмма определяется именем и строкой меток в формате Prometheus,
+ * например {@code method="GET",uri="/films/{id}"}. Отдается в текстовом формате Prometheus как summary
+ * с квантилями 0.5, 0.95 и 0.99.
+ */
+@Component
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Histogram>> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> help = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Гистограмма длительностей в наносекундах, при выгрузке переводится в секунды.
+     */
+    public Histogram timer(String name, String description, String labels) {
+        timers.putIfAbsent(name, true);
+        return histogram(name, description, labels);
+    }
+
+    public Histogram histogram(String name, String description, String labels) {
+        help.putIfAbsent(name, description);
+        return histograms.computeIfAbsent(name, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(labels, key -> new Histogram());
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        new TreeMap<>(histograms).forEach((name, byLabels) -> {
+            boolean timer = timers.containsKey(name);
+            out.append("# HELP ").append(name).append(' ').append(help.get(name)).append('\n');
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (Map.Entry<String, Histogram> entry : new TreeMap<>(byLabels).entrySet()) {
+                String labels = entry.getKey();
+                Histogram histogram = entry.getValue();
+                String separator = labels.isEmpty() ? "" : ",";
+                for (double quantile : QUANTILES) {
+                    out.append(name).append('{').append(labels).append(separator)
+                            .append("quantile=\"").append(quantile).append("\"} ")
+                            .append(format(histogram.getQuantile(quantile), timer)).append('\n');
+                }
+                out.append(name).append("_sum{").append(labels).append("} ")
+                        .append(format(histogram.getSum(), timer)).append('\n');
+                out.append(name).append("_count{").append(labels).append("} ")
+                        .append(histogram.getCount()).append('\n');
+            }
+        });
+        return out.toString();
+    }
+
+    public static String label(String name, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return name + "=\"" + escaped + "\"";
+    }
+
+    private static String format(long value, boolean timer) {
+        return timer ? String.valueOf(value / NANOS_IN_SECOND) : String.valueOf(value);
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Замеряет длительность обработки каждого запроса и число SQL-запросов, выполненных при его обработке,
+ * и предупреждает, если обработчик превысил свой {@link StatementBudget}.
+ * <p>
+ * Число SQL-запросов считается всегда. Тексты запросов записываются и бюджет проверяется, только если задано
+ * {@code filmorate.metrics.sql-details.enabled=true}: так включено в тестах и в профиле {@code dev}.
+ * <p>
+ * Метка {@code uri} — шаблон пути обработчика, а не сам путь, чтобы число рядов не зависело от идентификаторов.
+ * <p>
+ * Для асинхронных ответов длительность считается до завершения ответа. SQL-запросы потока, который пишет тело
+ * ответа, учитываются, только если он привязал к себе области запроса через {@link SqlStatements#attached()}.
+ */
+@Slf4j
+@Component
+public class RequestMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String START = RequestMetricsInterceptor.class.getName() + ".start";
+    private static final String SCOPE = RequestMetricsInterceptor.class.getName() + ".scope";
+
+    private final MetricsRegistry registry;
+    private final boolean sqlDetails;
+
+    public RequestMetricsInterceptor(MetricsRegistry registry,
+                                     @Value("${filmorate.metrics.sql-details.enabled:false}") boolean sqlDetails) {
+        this.registry = registry;
+        this.sqlDetails = sqlDetails;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        SqlStatements.Scope scope = (SqlStatements.Scope) request.getAttribute(SCOPE);
+        if (scope == null) {
+            request.setAttribute(START, System.nanoTime());
+            request.setAttribute(SCOPE, SqlStatements.open(sqlDetails));
+        } else {
+            scope.attach();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        ((SqlStatements.Scope) request.getAttribute(SCOPE)).close();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        SqlStatements.Scope scope = (SqlStatements.Scope) request.getAttribute(SCOPE);
+        scope.close();
+        if (request.isAsyncStarted()) {
+            return;
+        }
+        // Диспетчеризация на страницу ошибки идет с теми же атрибутами и замеряется отдельно
+        request.removeAttribute(SCOPE);
+
+        long elapsed = System.nanoTime() - (Long) request.getAttribute(START);
+        String uri = uriOf(request);
+        String labels = MetricsRegistry.label("method", request.getMethod()) + "," + MetricsRegistry.label("uri",
+                uri);
+        registry.timer("http_server_requests_seconds", "Длительность обработки HTTP-запросов.",
+                labels + "," + MetricsRegistry.label("status", String.valueOf(response.getStatus())))
+                .record(elapsed);
+        registry.histogram("http_server_sql_statements", "Число SQL-запросов на один HTTP-запрос.", labels)
+                .record(scope.getCount());
+
+        if (!sqlDetails) {
+            return;
+        }
+        StatementBudget budget = handler instanceof HandlerMethod
+                ? ((HandlerMethod) handler).getMethodAnnotation(StatementBudget.class) : null;
+        if (budget != null && scope.getCount() > scope.allowed(budget)) {
+            log.warn("Запрос {} {} превысил бюджет в {} SQL-запросов: {}", request.getMethod(), uri,
+                    scope.allowed(budget), scope.describe());
+        }
+    }
+
+    private static String uriOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern == null ? "UNKNOWN" : pattern.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Учет SQL-запросов, выполненных текущим потоком. Запросы записываются во все области ({@link Scope}),
+ * привязанные к потоку, поэтому области могут быть вложенными: например, область HTTP-запроса внутри области теста.
+ * Вне областей запросы не учитываются.
+ * <p>
+ * Вместе с числом запросов область хранит их тексты. По ним строится форма запроса — текст SQL, в котором литералы
+ * и списки параметров свернуты. Запрос, форма которого повторяется много раз за один HTTP-запрос, обычно выполняется
+ * для каждой строки результата (N+1). Формы считаются только при чтении {@link Scope#getRepeated()}, то есть когда
+ * бюджет превышен: учет каждого запроса не разбирает его текст. Тексты нужны только для поиска N+1 в тестах
+ * и при разработке, поэтому область, открытая через {@link #open(boolean)} без записи текстов, только считает запросы.
+ */
+public final class SqlStatements {
+
+    private static final ThreadLocal<Deque<Scope>> ATTACHED = new ThreadLocal<>();
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'|\\b\\d+\\b");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+
+    private SqlStatements() {
+    }
+
+    /**
+     * Создает область, которая записывает тексты запросов, и привязывает ее к текущему потоку до {@link Scope#close()}.
+     */
+    public static Scope open() {
+        return open(true);
+    }
+
+    public static Scope open(boolean recordStatements) {
+        Scope scope = new Scope(recordStatements);
+        scope.attach();
+        return scope;
+    }
+
+    /**
+     * Области, привязанные к текущему потоку, — чтобы продолжить учет в другом потоке.
+     */
+    public static List<Scope> attached() {
+        Deque<Scope> scopes = ATTACHED.get();
+        return scopes == null ? List.of() : new ArrayList<>(scopes);
+    }
+
+    static void onStatement(String sql) {
+        Deque<Scope> scopes = ATTACHED.get();
+        if (scopes == null) {
+            return;
+        }
+        for (Scope scope : scopes) {
+            scope.record(sql);
+        }
+    }
+
+    /**
+     * Сообщает областям текущего потока, что обработчик начинает следующий пакет записей.
+     */
+    public static void onChunk() {
+        Deque<Scope> scopes = ATTACHED.get();
+        if (scopes == null) {
+            return;
+        }
+        for (Scope scope : scopes) {
+            scope.recordChunk();
+        }
+    }
+
+    static String shapeOf(String sql) {
+        if (sql == null) {
+            return "?";
+        }
+        String shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        shape = LITERAL.matcher(shape).replaceAll("?");
+        return PARAMETER_LIST.matcher(shape).replaceAll("?, ...");
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        // Блокировка вместо synchronized: запись идет на каждый SQL-запрос и не должна закреплять виртуальный поток
+        // за потоком-носителем
+        private final ReentrantLock lock = new ReentrantLock();
+        // Тексты запросов обычно константы или строятся по числу параметров, поэтому различных текстов немного
+        private final Map<String, Long> statements = new LinkedHashMap<>();
+        private final boolean recordStatements;
+        private long count;
+        private long chunks;
+
+        private Scope(boolean recordStatements) {
+            this.recordStatements = recordStatements;
+        }
+
+        /**
+         * Продолжает учет запросов текущего потока в этой области.
+         */
+        public void attach() {
+            Deque<Scope> scopes = ATTACHED.get();
+            if (scopes == null) {
+                scopes = new ArrayDeque<>();
+                ATTACHED.set(scopes);
+            }
+            scopes.addLast(this);
+        }
+
+        /**
+         * Прекращает учет запросов текущего потока в этой области. Собранные данные остаются доступны.
+         */
+        @Override
+        public void close() {
+            Deque<Scope> scopes = ATTACHED.get();
+            if (scopes == null) {
+                return;
+            }
+            scopes.removeLastOccurrence(this);
+            if (scopes.isEmpty()) {
+                ATTACHED.remove();
+            }
+        }
+
+        public long getCount() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Сколько запросов допускает бюджет с учетом числа пакетов, обработанных в области.
+         */
+        public long allowed(StatementBudget budget) {
+            lock.lock();
+            try {
+                return budget.value() + budget.perChunk() * chunks;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Формы запросов, выполненных больше одного раза, с числом выполнений, по убыванию числа.
+         */
+        public Map<String, Long> getRepeated() {
+            lock.lock();
+            try {
+                Map<String, Long> shapes = new LinkedHashMap<>();
+                statements.forEach((sql, times) -> shapes.merge(shapeOf(sql), times, Long::sum));
+                return shapes.entrySet().stream()
+                        .filter(entry -> entry.getValue() > 1)
+                        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a,
+                                LinkedHashMap::new));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Описание для сообщений о превышении бюджета: число запросов и повторяющиеся формы.
+         */
+        public String describe() {
+            StringBuilder description = new StringBuilder().append(getCount()).append(" SQL-запросов");
+            getRepeated().forEach((shape, times) -> description.append("\n  ").append(times).append(" x ")
+                    .append(shape));
+            return description.toString();
+        }
+
+        private void recordChunk() {
+            lock.lock();
+            try {
+                chunks++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void record(String sql) {
+            lock.lock();
+            try {
+                count++;
+                if (recordStatements) {
+                    statements.merge(sql, 1L, Long::sum);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
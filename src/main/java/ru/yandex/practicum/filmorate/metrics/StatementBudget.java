@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Наибольшее число SQL-запросов, которое обработчик может выполнить за один HTTP-запрос. Бюджет не должен
+ * зависеть от объема данных: если число запросов растет вместе с числом строк в ответе, где-то выполняется
+ * запрос на каждую строку. Обработчики, которые пишут или читают данные пакетами фиксированного размера, задают
+ * бюджет одного пакета в {@link #perChunk()}: число пакетов растет с объемом данных, число запросов на пакет — нет.
+ * <p>
+ * При превышении бюджета {@link RequestMetricsInterceptor} пишет предупреждение с повторяющимися запросами,
+ * а тест контроллеров падает.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface StatementBudget {
+
+    int value();
+
+    /**
+     * Дополнительный бюджет на каждый пакет, о котором сообщено через {@link SqlStatements#onChunk()}.
+     */
+    int perChunk() default 0;
+}
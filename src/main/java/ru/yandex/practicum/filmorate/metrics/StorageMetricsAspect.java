@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Замеряет длительность каждого вызова методов хранилищ. Ряды различаются классом реализации, поэтому
+ * вызовы через {@code WriteBehindFilmStorage} видны и у него, и у {@code FilmDbStorage}, которому он их передает.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class StorageMetricsAspect {
+
+    private final MetricsRegistry registry;
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Histogram>> histograms = new ConcurrentHashMap<>();
+
+    @Around("execution(public * ru.yandex.practicum.filmorate.storage.FilmStorage.*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage.UserStorage.*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage.GenreStorage.*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage.MpaStorage.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Histogram histogram = histogramOf(AopUtils.getTargetClass(joinPoint.getTarget()),
+                joinPoint.getSignature().getName());
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    private Histogram histogramOf(Class<?> storage, String method) {
+        return histograms.computeIfAbsent(storage, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, key -> registry.timer("storage_call_seconds",
+                        "Длительность вызовов методов хранилищ.",
+                        MetricsRegistry.label("storage", storage.getSimpleName()) + ","
+                                + MetricsRegistry.label("method", method)));
+    }
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Итог пакетной загрузки. {@code ids} совпадает по позициям с загруженными записями: для отклоненной записи
+ * вместо id стоит {@code null}, а причина лежит в {@code errors} под тем же индексом.
+ */
+@Data
+public class BatchResult {
+
+    private final List<Long> ids = new ArrayList<>();
+    private final List<ItemError> errors = new ArrayList<>();
+
+    @Data
+    public static class ItemError {
+        private final int index;
+        private final String error;
+    }
+
+    public void reject(int index, String error) {
+        ids.set(index, null);
+        errors.add(new ItemError(index, error));
+    }
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Расхождение денормализованных счетчиков с таблицами связей: {@code films.likes_count} с {@code likes}
+ * и {@code users.friends_count} с {@code friendships}. Списки id содержат не больше {@link #SAMPLE_SIZE} записей.
+ */
+@Value
+@Builder
+public class CounterDrift {
+
+    public static final int SAMPLE_SIZE = 100;
+
+    long films;
+    List<Long> filmIds;
+    long users;
+    List<Long> userIds;
+
+    public boolean isEmpty() {
+        return films == 0 && users == 0;
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -12,7 +13,7 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.Size;
 import java.time.LocalDate;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -37,8 +38,30 @@ public class Film extends AbstractEntity<Long> {
     @NotNull(message = "рейтинг MPA не может быть пустым")
     private Mpa mpa;
 
-    private final Set<Long> likes = new HashSet<>();
+    // Растет при каждом изменении фильма, включая лайки; отдается клиентам в ETag, а не в теле
+    @JsonIgnore
+    private long version;
 
+    @Builder.Default
+    private IdSet likes = new IdSet();
+
+    @NotNull(message = "список жанров не может быть null")
     @Builder.Default
     private Set<Genre> genres = new TreeSet<>();
+
+    // Снимок для кэша: лайки и жанры снимка не изменить, поэтому его можно отдавать всем читателям без копирования
+    public Film readOnlyCopy() {
+        Film copy = Film.builder()
+                .name(name)
+                .description(description)
+                .releaseDate(releaseDate)
+                .duration(duration)
+                .mpa(mpa)
+                .version(version)
+                .likes(likes.readOnlyCopy())
+                .genres(Collections.unmodifiableSet(new TreeSet<>(genres)))
+                .build();
+        copy.setId(getId());
+        return copy;
+    }
 }
@@ -0,0 +1,206 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Друзья пользователя на отсортированном массиве примитивов. Каждый элемент хранит id друга в старших битах
+ * и признак подтверждения дружбы в младшем, поэтому порядок массива совпадает с порядком id друзей.
+ * В JSON представляется так же, как раньше: массивом объектов {@code {"friendId": 1, "confirmed": false}}.
+ * Класс не потокобезопасен; копию только для чтения можно без синхронизации отдавать нескольким потокам.
+ */
+@JsonSerialize(using = FriendSet.Serializer.class)
+@JsonDeserialize(using = FriendSet.Deserializer.class)
+public class FriendSet {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] entries = EMPTY;
+    private int size;
+    private boolean readOnly;
+
+    @FunctionalInterface
+    public interface FriendConsumer {
+        void accept(long friendId, boolean isConfirmed);
+    }
+
+    public boolean add(long friendId, boolean isConfirmed) {
+        checkWritable();
+        int index = indexOf(friendId);
+        if (index >= 0) {
+            return false;
+        }
+
+        index = -index - 1;
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(entries, index, entries, index + 1, size - index);
+        entries[index] = encode(friendId, isConfirmed);
+        size++;
+        return true;
+    }
+
+    public boolean remove(long friendId) {
+        checkWritable();
+        int index = indexOf(friendId);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    public boolean setConfirmed(long friendId, boolean isConfirmed) {
+        checkWritable();
+        int index = indexOf(friendId);
+        if (index < 0) {
+            return false;
+        }
+        entries[index] = encode(friendId, isConfirmed);
+        return true;
+    }
+
+    public boolean contains(long friendId) {
+        return indexOf(friendId) >= 0;
+    }
+
+    public boolean isConfirmed(long friendId) {
+        int index = indexOf(friendId);
+        return index >= 0 && (entries[index] & 1) == 1;
+    }
+
+    public void clear() {
+        checkWritable();
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public IdSet friendIds() {
+        IdSet ids = new IdSet(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(entries[i] >>> 1);
+        }
+        return ids;
+    }
+
+    public FriendSet copy() {
+        FriendSet copy = new FriendSet();
+        copy.entries = Arrays.copyOf(entries, size);
+        copy.size = size;
+        return copy;
+    }
+
+    public FriendSet readOnlyCopy() {
+        FriendSet copy = copy();
+        copy.readOnly = true;
+        return copy;
+    }
+
+    public void forEach(FriendConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(entries[i] >>> 1, (entries[i] & 1) == 1);
+        }
+    }
+
+    // Неподтвержденная дружба кодируется четным числом, подтвержденная — следующим за ним нечетным
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Список друзей доступен только для чтения");
+        }
+    }
+
+    private int indexOf(long friendId) {
+        long unconfirmed = encode(friendId, false);
+        int index = Arrays.binarySearch(entries, 0, size, unconfirmed);
+        if (index >= 0) {
+            return index;
+        }
+        int insertionPoint = -index - 1;
+        if (insertionPoint < size && entries[insertionPoint] == (unconfirmed | 1)) {
+            return insertionPoint;
+        }
+        return index;
+    }
+
+    private static long encode(long friendId, boolean isConfirmed) {
+        return friendId << 1 | (isConfirmed ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FriendSet)) {
+            return false;
+        }
+        FriendSet other = (FriendSet) o;
+        return Arrays.equals(entries, 0, size, other.entries, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + Long.hashCode(entries[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        forEach((friendId, isConfirmed) -> sb.append(sb.length() > 1 ? ", " : "")
+                .append(friendId).append(isConfirmed ? "+" : ""));
+        return sb.append(']').toString();
+    }
+
+    static class Serializer extends JsonSerializer<FriendSet> {
+        @Override
+        public void serialize(FriendSet friends, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartArray();
+            for (int i = 0; i < friends.size; i++) {
+                gen.writeStartObject();
+                gen.writeNumberField("friendId", friends.entries[i] >>> 1);
+                gen.writeBooleanField("confirmed", (friends.entries[i] & 1) == 1);
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    static class Deserializer extends JsonDeserializer<FriendSet> {
+        @Override
+        public FriendSet deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            FriendSet friends = new FriendSet();
+            JsonNode node = p.getCodec().readTree(p);
+            for (JsonNode friend : node) {
+                if (friend.isNumber()) {
+                    friends.add(friend.asLong(), false);
+                } else {
+                    friends.add(friend.path("friendId").asLong(), friend.path("confirmed").asBoolean());
+                }
+            }
+            return friends;
+        }
+    }
+}
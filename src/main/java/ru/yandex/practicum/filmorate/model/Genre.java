@@ -1,17 +1,19 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-import lombok.NoArgsConstructor;
-import lombok.experimental.SuperBuilder;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
-@Data
-@SuperBuilder
-@NoArgsConstructor
-@EqualsAndHashCode(callSuper = true)
-public class Genre extends AbstractEntity<Integer> implements Comparable<Genre> {
+/**
+ * Жанр неизменяем, поэтому справочник отдает один и тот же экземпляр всем фильмам без копирования.
+ */
+@Value
+@Builder
+@Jacksonized
+public class Genre implements Comparable<Genre> {
 
-    private String name;
+    Integer id;
+    String name;
 
     @Override
     public int compareTo(Genre o) {
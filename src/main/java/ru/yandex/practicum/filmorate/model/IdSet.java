@@ -0,0 +1,195 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * Множество id на отсортированном массиве примитивов: 8 байт на элемент вместо упакованного Long и узла HashMap.
+ * Поиск — бинарный, пересечение и разность — слиянием двух отсортированных массивов, без упаковки.
+ * В JSON представляется массивом чисел. Класс не потокобезопасен; копию только для чтения, которая бросает
+ * {@link UnsupportedOperationException} при изменении, можно без синхронизации отдавать нескольким потокам.
+ */
+public class IdSet {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] ids;
+    private int size;
+    private boolean readOnly;
+
+    public IdSet() {
+        ids = EMPTY;
+    }
+
+    public IdSet(int capacity) {
+        ids = capacity == 0 ? EMPTY : new long[capacity];
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static IdSet of(long... values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        IdSet set = new IdSet(sorted.length);
+        for (long value : sorted) {
+            if (set.size == 0 || set.ids[set.size - 1] != value) {
+                set.ids[set.size++] = value;
+            }
+        }
+        return set;
+    }
+
+    public boolean add(long id) {
+        checkWritable();
+        // Частый случай при загрузке из БД — id приходят по возрастанию и добавляются в конец
+        if (size == 0 || ids[size - 1] < id) {
+            insert(size, id);
+            return true;
+        }
+
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            return false;
+        }
+        insert(-index - 1, id);
+        return true;
+    }
+
+    public boolean remove(long id) {
+        checkWritable();
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    public void addAll(IdSet other) {
+        checkWritable();
+        other.forEach(this::add);
+    }
+
+    public void clear() {
+        checkWritable();
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public IdSet intersect(IdSet other) {
+        IdSet result = new IdSet(Math.min(size, other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (ids[i] < other.ids[j]) {
+                i++;
+            } else if (ids[i] > other.ids[j]) {
+                j++;
+            } else {
+                result.ids[result.size++] = ids[i];
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public IdSet difference(IdSet other) {
+        IdSet result = new IdSet(size);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.ids[j] < ids[i]) {
+                j++;
+            }
+            if (j == other.size || other.ids[j] != ids[i]) {
+                result.ids[result.size++] = ids[i];
+            }
+        }
+        return result;
+    }
+
+    public IdSet copy() {
+        IdSet copy = new IdSet(size);
+        System.arraycopy(ids, 0, copy.ids, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    public IdSet readOnlyCopy() {
+        IdSet copy = copy();
+        copy.readOnly = true;
+        return copy;
+    }
+
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(ids[i]);
+        }
+    }
+
+    public LongStream stream() {
+        return Arrays.stream(ids, 0, size);
+    }
+
+    @JsonValue
+    public long[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    private void insert(int index, long id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IdSet)) {
+            return false;
+        }
+        IdSet other = (IdSet) o;
+        return Arrays.equals(ids, 0, size, other.ids, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + Long.hashCode(ids[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Множество id доступно только для чтения");
+        }
+    }
+}
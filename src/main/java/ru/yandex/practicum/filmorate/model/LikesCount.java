@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Число лайков фильма и версия фильма, при которой оно прочитано. Оба значения читаются согласованно: в число
+ * входят все изменения лайков с версией не больше {@code version} и ни одного более нового.
+ */
+@Value
+@Builder
+public class LikesCount {
+
+    int likes;
+    long version;
+}
@@ -1,15 +1,17 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-import lombok.NoArgsConstructor;
-import lombok.experimental.SuperBuilder;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
-@Data
-@SuperBuilder
-@NoArgsConstructor
-@EqualsAndHashCode(callSuper = true)
-public class Mpa extends AbstractEntity<Integer> {
+/**
+ * Рейтинг неизменяем, поэтому справочник отдает один и тот же экземпляр всем фильмам без копирования.
+ */
+@Value
+@Builder
+@Jacksonized
+public class Mpa {
 
-    private String name;
+    Integer id;
+    String name;
 }
@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
@@ -7,8 +9,6 @@ import lombok.experimental.SuperBuilder;
 
 import javax.validation.constraints.*;
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Set;
 
 @Data
 @EqualsAndHashCode(callSuper = true)
@@ -28,5 +28,24 @@ public class User extends AbstractEntity<Long> {
     @PastOrPresent(message = "дата рождения не может быть в будущем")
     private LocalDate birthday;
 
-    private final Set<Friendship> friends = new HashSet<>();
+    // Растет при каждом изменении пользователя, включая дружбы; отдается клиентам в ETag, а не в теле
+    @JsonIgnore
+    private long version;
+
+    @Builder.Default
+    private FriendSet friends = new FriendSet();
+
+    // Снимок для кэша: друзей снимка не изменить, поэтому его можно отдавать всем читателям без копирования
+    public User readOnlyCopy() {
+        User copy = User.builder()
+                .email(email)
+                .login(login)
+                .name(name)
+                .birthday(birthday)
+                .version(version)
+                .friends(friends.readOnlyCopy())
+                .build();
+        copy.setId(getId());
+        return copy;
+    }
 }
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.CounterDrift;
+import ru.yandex.practicum.filmorate.storage.CounterStorage;
+
+/**
+ * Контроль денормализованных счетчиков лайков и друзей. При старте счетчики проверяются
+ * ({@code filmorate.counters.startup=check}), пересчитываются ({@code backfill}) или не трогаются ({@code none}).
+ */
+@Slf4j
+@Service
+public class CounterService {
+
+    private final CounterStorage counterStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final String startupMode;
+
+    public CounterService(CounterStorage counterStorage, FilmPopularityIndex popularityIndex,
+                          @Value("${filmorate.counters.startup:check}") String startupMode) {
+        this.counterStorage = counterStorage;
+        this.popularityIndex = popularityIndex;
+        this.startupMode = startupMode;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        switch (startupMode) {
+            case "backfill":
+                backfill();
+                break;
+            case "check":
+                checkDrift();
+                break;
+            default:
+                break;
+        }
+    }
+
+    public CounterDrift checkDrift() {
+        CounterDrift drift = counterStorage.checkDrift();
+        if (!drift.isEmpty()) {
+            log.warn("Счетчики расходятся со связями: фильмов {} (id {}), пользователей {} (id {}).",
+                    drift.getFilms(), drift.getFilmIds(), drift.getUsers(), drift.getUserIds());
+        }
+        return drift;
+    }
+
+    public CounterDrift backfill() {
+        CounterDrift drift = counterStorage.backfill();
+        if (drift.getFilms() > 0) {
+            // Рейтинг популярности строится по likes_count и после пересчета строится заново
+            popularityIndex.refresh();
+        }
+        log.info("Счетчики пересчитаны: исправлено фильмов {}, пользователей {}.", drift.getFilms(),
+                drift.getUsers());
+        return drift;
+    }
+}
@@ -0,0 +1,200 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/**
+ * Обратный индекс лайков в памяти: кто лайкнул фильм и какие фильмы лайкнул пользователь. Списки хранятся
+ * отсортированными массивами примитивов и не изменяются после публикации: изменение лайка заменяет массив целиком,
+ * поэтому рекомендации читают индекс без блокировок.
+ * <p>
+ * Рекомендации строятся в два прохода. Сначала для каждого пользователя считается, сколько фильмов он лайкнул вместе
+ * с данным, и отбираются {@code neighbors} самых похожих. Затем фильмы соседей, которых пользователь еще не лайкал,
+ * ранжируются по сумме похожести соседей, которые их лайкнули. Оба прохода делятся на задачи fork/join.
+ * Фильмы пользователя берутся начиная с наименее популярных — они лучше всего отличают вкусы — пока число
+ * просмотренных лайков не превысит {@code max-scanned-likes}; тот же предел действует на фильмы соседей.
+ * Поэтому время ответа ограничено и для пользователей с тысячами лайков.
+ */
+@Slf4j
+@Component
+public class FilmLikesIndex {
+
+    private static final long[] NONE = new long[0];
+    private static final int LEAF_WORK = 8192;
+
+    private final FilmStorage filmStorage;
+    private final int neighbors;
+    private final long maxScannedLikes;
+
+    private final ConcurrentMap<Long, long[]> likersByFilm = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, long[]> filmsByUser = new ConcurrentHashMap<>();
+
+    public FilmLikesIndex(FilmStorage filmStorage,
+                          @Value("${filmorate.recommendations.neighbors:50}") int neighbors,
+                          @Value("${filmorate.recommendations.max-scanned-likes:1000000}") long maxScannedLikes) {
+        this.filmStorage = filmStorage;
+        this.neighbors = neighbors;
+        this.maxScannedLikes = maxScannedLikes;
+    }
+
+    @PostConstruct
+    public void refresh() {
+        Map<Long, IdSet> films = new HashMap<>();
+        likersByFilm.clear();
+        filmsByUser.clear();
+        filmStorage.streamAll(film -> {
+            likersByFilm.put(film.getId(), film.getLikes().toArray());
+            film.getLikes().forEach(userId -> films.computeIfAbsent(userId, id -> new IdSet()).add(film.getId()));
+        });
+        films.forEach((userId, filmIds) -> filmsByUser.put(userId, filmIds.toArray()));
+        log.debug("Индекс лайков построен для {} фильмов и {} пользователей.", likersByFilm.size(), films.size());
+    }
+
+    public void addLike(long filmId, long userId) {
+        likersByFilm.compute(filmId, (id, likers) -> SortedIds.insert(likers, userId));
+        filmsByUser.compute(userId, (id, films) -> SortedIds.insert(films, filmId));
+    }
+
+    public void removeLike(long filmId, long userId) {
+        likersByFilm.computeIfPresent(filmId, (id, likers) -> SortedIds.deleteOrNull(likers, userId));
+        filmsByUser.computeIfPresent(userId, (id, films) -> SortedIds.deleteOrNull(films, filmId));
+    }
+
+    public void setLikes(long filmId, IdSet likes) {
+        long[] updated = likes.toArray();
+        long[][] previous = new long[1][];
+        likersByFilm.compute(filmId, (id, likers) -> {
+            previous[0] = likers;
+            return updated;
+        });
+        for (long userId : previous[0] == null ? NONE : previous[0]) {
+            if (Arrays.binarySearch(updated, userId) < 0) {
+                filmsByUser.computeIfPresent(userId, (id, films) -> SortedIds.deleteOrNull(films, filmId));
+            }
+        }
+        for (long userId : updated) {
+            filmsByUser.compute(userId, (id, films) -> SortedIds.insert(films, filmId));
+        }
+    }
+
+    /**
+     * Возвращает до {@code count} id фильмов, которые лайкнули пользователи с похожими лайками, по убыванию оценки.
+     */
+    public List<Long> recommend(long userId, int count) {
+        long[] liked = filmsByUser.getOrDefault(userId, NONE);
+        if (liked.length == 0) {
+            return List.of();
+        }
+
+        long[][] likers = leastPopularFirst(liked);
+        IdCounter overlaps = ForkJoinPool.commonPool().invoke(
+                new CountTask(likers, null, new long[]{userId}, 0, likers.length));
+        long[] similarUsers = overlaps.top(neighbors);
+
+        int[] weights = new int[similarUsers.length];
+        long[][] films = new long[similarUsers.length][];
+        long scanned = 0;
+        int used = 0;
+        for (long similarUser : similarUsers) {
+            long[] similarUserFilms = filmsByUser.getOrDefault(similarUser, NONE);
+            scanned += similarUserFilms.length;
+            if (used > 0 && scanned > maxScannedLikes) {
+                break;
+            }
+            films[used] = similarUserFilms;
+            weights[used++] = overlaps.get(similarUser);
+        }
+        IdCounter scores = ForkJoinPool.commonPool().invoke(new CountTask(films, weights, liked, 0, used));
+
+        return Arrays.stream(scores.top(count)).boxed().collect(Collectors.toList());
+    }
+
+    private long[][] leastPopularFirst(long[] liked) {
+        // Длина списка в старших битах, позиция фильма в младших: сортировка примитивов без компаратора
+        long[] order = new long[liked.length];
+        for (int i = 0; i < liked.length; i++) {
+            order[i] = (long) likersByFilm.getOrDefault(liked[i], NONE).length << 32 | i;
+        }
+        Arrays.sort(order);
+
+        long[][] likers = new long[liked.length][];
+        long scanned = 0;
+        int used = 0;
+        for (long entry : order) {
+            long[] filmLikers = likersByFilm.getOrDefault(liked[(int) entry], NONE);
+            scanned += filmLikers.length;
+            if (used > 0 && scanned > maxScannedLikes) {
+                break;
+            }
+            likers[used++] = filmLikers;
+        }
+        return Arrays.copyOf(likers, used);
+    }
+
+    /**
+     * Считает, сколько раз каждый id встречается в списках {@code lists[from, to)}, с весом списка, пропуская id
+     * из отсортированного {@code excluded}. Диапазон делится пополам, пока в нем больше {@link #LEAF_WORK} id.
+     */
+    private static class CountTask extends RecursiveTask<IdCounter> {
+
+        private final long[][] lists;
+        private final int[] weights;
+        private final long[] excluded;
+        private final int from;
+        private final int to;
+
+        CountTask(long[][] lists, int[] weights, long[] excluded, int from, int to) {
+            this.lists = lists;
+            this.weights = weights;
+            this.excluded = excluded;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected IdCounter compute() {
+            long work = 0;
+            for (int i = from; i < to; i++) {
+                work += lists[i].length;
+            }
+            if (to - from > 1 && work > LEAF_WORK) {
+                int middle = (from + to) >>> 1;
+                CountTask left = new CountTask(lists, weights, excluded, from, middle);
+                left.fork();
+                IdCounter right = new CountTask(lists, weights, excluded, middle, to).compute();
+                IdCounter merged = left.join();
+                if (merged.size() < right.size()) {
+                    right.addAll(merged);
+                    return right;
+                }
+                merged.addAll(right);
+                return merged;
+            }
+
+            IdCounter counter = new IdCounter((int) Math.min(work, LEAF_WORK));
+            for (int i = from; i < to; i++) {
+                int weight = weights == null ? 1 : weights[i];
+                for (long id : lists[i]) {
+                    if (Arrays.binarySearch(excluded, id) < 0) {
+                        counter.add(id, weight);
+                    }
+                }
+            }
+            return counter;
+        }
+    }
+}
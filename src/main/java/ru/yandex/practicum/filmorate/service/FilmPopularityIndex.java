@@ -0,0 +1,217 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikesCount;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Рейтинг фильмов по количеству лайков в памяти: по убыванию лайков, при равенстве — по возрастанию id фильма.
+ * <p>
+ * Кроме общего рейтинга ведутся отдельные рейтинги для каждого жанра, года релиза и пары «жанр, год». Фильм входит
+ * во все рейтинги своих жанров и своего года, поэтому топ с фильтром читается из одного рейтинга без просмотра
+ * фильмов, которые под фильтр не подходят.
+ * <p>
+ * Каждая позиция помнит версию фильма, при которой прочитано ее число лайков. Изменение лайка приходит с версией,
+ * которую вернуло хранилище, и применяется, только если оно новее позиции: изменение, уже учтенное в прочитанном
+ * числе, не считается дважды.
+ * <p>
+ * {@link #refresh()} строит новые рейтинги в стороне, пока чтение идет по старым, и публикует их одной записью
+ * в volatile-поле. Изменения, пришедшие во время построения, применяются к старым рейтингам и запоминаются, а перед
+ * публикацией повторяются на новых; благодаря версиям повтор не учитывает изменение дважды.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmPopularityIndex {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::getLikes).reversed()
+            .thenComparingLong(Entry::getFilmId);
+    private static final Segment ALL = new Segment(null, null);
+
+    private final FilmStorage filmStorage;
+
+    private volatile Rankings rankings = new Rankings();
+
+    // Изменения применяются под read-блокировкой, новые рейтинги публикуются под write-блокировкой
+    private final ReadWriteLock publishLock = new ReentrantReadWriteLock();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    // Изменения, пришедшие во время построения новых рейтингов, null вне refresh()
+    private volatile Queue<Consumer<Rankings>> replay;
+
+    @PostConstruct
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            publishLock.writeLock().lock();
+            try {
+                replay = new ConcurrentLinkedQueue<>();
+            } finally {
+                publishLock.writeLock().unlock();
+            }
+
+            Rankings built = new Rankings();
+            Map<Long, LikesCount> likesCounts = filmStorage.getLikesCounts();
+            filmStorage.getReleaseDatesAndGenres().forEach(film -> {
+                LikesCount likesCount = likesCounts.get(film.getId());
+                built.set(film.getId(), segmentsOf(film), likesCount == null ? 0 : likesCount.getLikes(),
+                        likesCount == null ? 0 : likesCount.getVersion());
+            });
+
+            publishLock.writeLock().lock();
+            try {
+                replay.forEach(change -> change.accept(built));
+                replay = null;
+                rankings = built;
+            } finally {
+                publishLock.writeLock().unlock();
+            }
+            log.debug("Рейтинг популярности построен для {} фильмов, рейтингов с фильтрами {}.",
+                    built.entries.size(), built.segments.size() - 1);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    // Жанры, год и версия берутся из фильма, число лайков — из аргумента
+    public void setFilm(Film film, int likes) {
+        List<Segment> segments = segmentsOf(film);
+        long version = film.getVersion();
+        apply(current -> current.set(film.getId(), segments, likes, version));
+    }
+
+    public void increment(long filmId, long version) {
+        apply(current -> current.add(filmId, 1, version));
+    }
+
+    public void decrement(long filmId, long version) {
+        apply(current -> current.add(filmId, -1, version));
+    }
+
+    // null в genreId или year означает отсутствие фильтра
+    public List<Long> getTopFilmIds(int count, Integer genreId, Integer year) {
+        Set<Entry> ranking = rankings.segments.get(new Segment(genreId, year));
+        if (ranking == null) {
+            return List.of();
+        }
+
+        List<Long> filmIds = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        Iterator<Entry> iterator = ranking.iterator();
+        while (filmIds.size() < count && iterator.hasNext()) {
+            long filmId = iterator.next().getFilmId();
+            if (seen.add(filmId)) {
+                filmIds.add(filmId);
+            }
+        }
+        return filmIds;
+    }
+
+    private void apply(Consumer<Rankings> change) {
+        publishLock.readLock().lock();
+        try {
+            change.accept(rankings);
+            Queue<Consumer<Rankings>> pending = replay;
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    private static List<Segment> segmentsOf(Film film) {
+        Integer year = film.getReleaseDate() != null ? film.getReleaseDate().getYear() : null;
+        List<Segment> segments = new ArrayList<>();
+        segments.add(ALL);
+        if (year != null) {
+            segments.add(new Segment(null, year));
+        }
+        for (Genre genre : film.getGenres()) {
+            segments.add(new Segment(genre.getId(), null));
+            if (year != null) {
+                segments.add(new Segment(genre.getId(), year));
+            }
+        }
+        return segments;
+    }
+
+    private static class Rankings {
+
+        final ConcurrentMap<Long, Entry> entries = new ConcurrentHashMap<>();
+        final ConcurrentMap<Segment, ConcurrentSkipListSet<Entry>> segments = new ConcurrentHashMap<>();
+
+        // Позиция не заменяется более старой: такое значение уже учтено в ней
+        void set(long filmId, List<Segment> filmSegments, int likes, long version) {
+            entries.compute(filmId, (id, old) -> old != null && old.getVersion() > version
+                    ? old : replace(old, new Entry(id, likes, version, filmSegments)));
+        }
+
+        void add(long filmId, int delta, long version) {
+            entries.compute(filmId, (id, old) -> {
+                if (old == null) {
+                    return replace(null, new Entry(id, Math.max(delta, 0), version, List.of(ALL)));
+                }
+                if (version <= old.getVersion()) {
+                    return old;
+                }
+                // Версия позиции не растет: изменения других лайков с меньшей версией еще могут прийти
+                return replace(old, new Entry(id, old.getLikes() + delta, old.getVersion(), old.getSegments()));
+            });
+        }
+
+        // Новая позиция добавляется раньше удаления старой: читатель может на мгновение увидеть фильм дважды
+        // (повтор отбрасывается), но не может его пропустить. Старая позиция с тем же числом лайков совпадает с новой
+        // по порядку рейтинга и в общих рейтингах остается на месте
+        private Entry replace(Entry old, Entry updated) {
+            updated.getSegments().forEach(segment ->
+                    segments.computeIfAbsent(segment, s -> new ConcurrentSkipListSet<>(ORDER)).add(updated));
+            if (old != null) {
+                old.getSegments().forEach(segment -> {
+                    Set<Entry> ranking = segments.get(segment);
+                    if (ranking != null
+                            && (old.getLikes() != updated.getLikes() || !updated.getSegments().contains(segment))) {
+                        ranking.remove(old);
+                    }
+                });
+            }
+            return updated;
+        }
+    }
+
+    @Value
+    private static class Entry {
+        long filmId;
+        int likes;
+        long version;
+        List<Segment> segments;
+    }
+
+    @Value
+    private static class Segment {
+        Integer genreId;
+        Integer year;
+    }
+}
@@ -0,0 +1,230 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Полнотекстовый поиск фильмов по названию и описанию. Текст разбивается на слова из букв и цифр, приводится к
+ * нижнему регистру, буква «ё» заменяется на «е». Обратный индекс хранит для каждого слова отсортированный массив id
+ * фильмов и, как и индекс лайков, заменяет массив целиком при изменении; слова лежат в отсортированной карте, поэтому
+ * слова с заданным префиксом образуют один непрерывный диапазон.
+ * <p>
+ * Каждое слово запроса длиной от {@value #MIN_PREFIX_LENGTH} символов считается префиксом: фильм подходит, если для
+ * каждого слова запроса в названии или описании есть слово, которое с него начинается. Более короткие слова запроса
+ * ищутся только целиком: под префикс из одной-двух букв подходит большая часть словаря, и перебор его диапазона
+ * стоил бы как просмотр всего индекса. Кандидаты берутся из диапазона самого редкого слова запроса и проверяются
+ * по спискам слов самих фильмов, поэтому частые слова вроде «фильм» не перебираются целиком. Совпадение в названии
+ * весит больше совпадения в описании, совпадение слова целиком — больше совпадения по префиксу.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmSearchIndex {
+
+    private static final int EXACT = 2;
+    private static final int PREFIX = 1;
+    private static final int NAME_WEIGHT = 2;
+    private static final int MIN_PREFIX_LENGTH = 3;
+    private static final String[] NO_TERMS = new String[0];
+
+    private final FilmStorage filmStorage;
+
+    private final ConcurrentMap<Long, Document> documents = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, long[]> postings = new ConcurrentSkipListMap<>();
+
+    @PostConstruct
+    public void refresh() {
+        Map<String, IdSet> filmsByTerm = new HashMap<>();
+        documents.clear();
+        postings.clear();
+        filmStorage.streamAll(film -> {
+            Document document = Document.of(film);
+            documents.put(film.getId(), document);
+            document.forEachTerm(term -> filmsByTerm.computeIfAbsent(term, t -> new IdSet()).add(film.getId()));
+        });
+        filmsByTerm.forEach((term, filmIds) -> postings.put(term, filmIds.toArray()));
+        log.debug("Поисковый индекс построен для {} фильмов, слов {}.", documents.size(), postings.size());
+    }
+
+    public void index(Film film) {
+        Document updated = Document.of(film);
+        documents.compute(film.getId(), (filmId, previous) -> {
+            Document old = previous != null ? previous : Document.EMPTY;
+            old.forEachTerm(term -> {
+                if (!updated.contains(term)) {
+                    // Пустой список удаляется из карты, чтобы префиксные диапазоны не накапливали слова без фильмов
+                    postings.computeIfPresent(term, (t, filmIds) -> SortedIds.deleteOrNull(filmIds, filmId));
+                }
+            });
+            updated.forEachTerm(term -> {
+                if (!old.contains(term)) {
+                    postings.compute(term, (t, filmIds) -> SortedIds.insert(filmIds, filmId));
+                }
+            });
+            return updated;
+        });
+    }
+
+    /**
+     * Возвращает id фильмов, подходящих под запрос, по убыванию релевантности, при равенстве — по возрастанию id,
+     * начиная с позиции {@code offset}, не больше {@code limit}.
+     */
+    public List<Long> search(String query, int offset, int limit) {
+        String[] tokens = tokenize(query);
+        if (tokens.length == 0) {
+            return List.of();
+        }
+
+        IdCounter scores = new IdCounter(16);
+        for (long filmId : candidates(tokens)) {
+            Document document = documents.get(filmId);
+            int score = document != null ? document.score(tokens) : 0;
+            if (score > 0) {
+                scores.add(filmId, score);
+            }
+        }
+
+        long[] top = scores.top((int) Math.min((long) offset + limit, scores.size()));
+        return Arrays.stream(top).skip(offset).boxed().collect(Collectors.toList());
+    }
+
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return NO_TERMS;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        TreeSet<String> terms = new TreeSet<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean isWordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                terms.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms.toArray(NO_TERMS);
+    }
+
+    // Фильмы из диапазона слова запроса, под которое подходит меньше всего фильмов
+    private long[] candidates(String[] tokens) {
+        NavigableMap<String, long[]> rarest = null;
+        long rarestSize = Long.MAX_VALUE;
+        for (String token : tokens) {
+            NavigableMap<String, long[]> range = token.length() < MIN_PREFIX_LENGTH
+                    ? postings.subMap(token, true, token, true)
+                    : postings.subMap(token, true, token + Character.MAX_VALUE, false);
+            long size = 0;
+            for (long[] filmIds : range.values()) {
+                size += filmIds.length;
+                if (size >= rarestSize) {
+                    break;
+                }
+            }
+            if (size < rarestSize) {
+                rarest = range;
+                rarestSize = size;
+            }
+            if (rarestSize == 0) {
+                break; // Под слово не подходит ни один фильм, остальные слова запроса можно не смотреть
+            }
+        }
+
+        List<long[]> lists = new ArrayList<>(rarest.values());
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        long[] merged = new long[lists.stream().mapToInt(filmIds -> filmIds.length).sum()];
+        int size = 0;
+        for (long[] filmIds : lists) {
+            System.arraycopy(filmIds, 0, merged, size, filmIds.length);
+            size += filmIds.length;
+        }
+        Arrays.sort(merged, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || merged[unique - 1] != merged[i]) {
+                merged[unique++] = merged[i];
+            }
+        }
+        return Arrays.copyOf(merged, unique);
+    }
+
+    // Отсортированные слова названия и описания одного фильма
+    private static final class Document {
+
+        static final Document EMPTY = new Document(NO_TERMS, NO_TERMS);
+
+        private final String[] name;
+        private final String[] description;
+
+        private Document(String[] name, String[] description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        static Document of(Film film) {
+            return new Document(tokenize(film.getName()), tokenize(film.getDescription()));
+        }
+
+        boolean contains(String term) {
+            return Arrays.binarySearch(name, term) >= 0 || Arrays.binarySearch(description, term) >= 0;
+        }
+
+        void forEachTerm(Consumer<String> action) {
+            for (String term : name) {
+                action.accept(term);
+            }
+            for (String term : description) {
+                if (Arrays.binarySearch(name, term) < 0) {
+                    action.accept(term);
+                }
+            }
+        }
+
+        // 0, если хотя бы одно слово запроса не нашлось ни в названии, ни в описании
+        int score(String[] tokens) {
+            int score = 0;
+            for (String token : tokens) {
+                int tokenScore = match(name, token) * NAME_WEIGHT + match(description, token);
+                if (tokenScore == 0) {
+                    return 0;
+                }
+                score += tokenScore;
+            }
+            return score;
+        }
+
+        private static int match(String[] terms, String token) {
+            int position = Arrays.binarySearch(terms, token);
+            if (position >= 0) {
+                return EXACT;
+            }
+            if (token.length() < MIN_PREFIX_LENGTH) {
+                return 0;
+            }
+            position = -position - 1;
+            return position < terms.length && terms[position].startsWith(token) ? PREFIX : 0;
+        }
+    }
+}
@@ -1,68 +1,188 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
-import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
 
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 @Service
 @RequiredArgsConstructor
 public class FilmService {
 
-    @Qualifier("filmDbStorage")
+    private static final int FILM_LOCK_STRIPES = 64;
+
     private final FilmStorage filmStorage;
-    private final UserStorage userStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikesIndex likesIndex;
+    private final FilmSearchIndex searchIndex;
+    private final UserService userService;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final EntityCache<Long, Film> filmCache;
+
+    // Обновление фильма пишется в хранилище и в индексы под блокировкой фильма. Лайк пишется в хранилище без
+    // блокировки, чтобы лайки одного фильма не ждали друг друга, а под блокировкой обновляются только индексы
+    private final ReentrantLock[] filmLocks = IntStream.range(0, FILM_LOCK_STRIPES)
+            .mapToObj(i -> new ReentrantLock())
+            .toArray(ReentrantLock[]::new);
+    // id фильма -> изменения лайков, которые сейчас пишутся в хранилище. Меняется под блокировкой фильма
+    private final ConcurrentMap<Long, LikeChanges> likeChanges = new ConcurrentHashMap<>();
 
     public List<Film> getAll() {
         return filmStorage.getAll();
     }
 
+    public List<Film> getPage(long afterId, int limit) {
+        return filmStorage.getPage(afterId, limit);
+    }
+
+    public void streamAll(Consumer<Film> consumer) {
+        filmStorage.streamAll(consumer);
+    }
+
     public Film create(Film film) {
-        return filmStorage.create(film);
+        Film created = filmStorage.create(film);
+        popularityIndex.setFilm(created, 0);
+        searchIndex.index(created);
+        return created;
+    }
+
+    public List<Film> createAll(List<Film> films) {
+        List<Film> created = filmStorage.createAll(films);
+        created.forEach(film -> {
+            popularityIndex.setFilm(film, 0);
+            searchIndex.index(film);
+        });
+        return created;
+    }
+
+    // Проверка ссылок на справочники до пакетной вставки, чтобы одна запись не откатывала весь пакет
+    public void checkReferences(Film film) {
+        mpaStorage.getMpaById(film.getMpa().getId());
+        film.getGenres().forEach(genre -> genreStorage.getGenreById(genre.getId()));
     }
 
     public Film update(Film film) {
-        return filmStorage.update(film);
+        return withFilmLock(film.getId(), () -> {
+            Film updated = filmStorage.update(film);
+            filmCache.invalidate(updated.getId());
+            popularityIndex.setFilm(updated, updated.getLikes().size());
+            likesIndex.setLikes(updated.getId(), updated.getLikes());
+            searchIndex.index(updated);
+            return updated;
+        });
     }
 
     public Film getFilmById(Long id) {
-        return filmStorage.getFilmById(id);
+        return filmCache.get(id, filmStorage::getFilmById);
+    }
+
+    public long getFilmVersion(Long id) {
+        return filmStorage.getFilmVersion(id);
     }
 
     public Film addLike(Long filmId, Long userId) {
-        final Film film = filmStorage.getFilmById(filmId);
-        userStorage.getUserById(userId); // Валидация существования пользователя
+        changeLike(filmId, userId, () -> filmStorage.addLike(filmId, userId), (version, latest) -> {
+            popularityIndex.increment(filmId, version);
+            if (latest) {
+                likesIndex.addLike(filmId, userId);
+            }
+        });
+        return getFilmById(filmId);
+    }
 
-        film.getLikes().add(userId);
-        filmStorage.update(film);
+    public Film deleteLike(Long filmId, Long userId) {
+        changeLike(filmId, userId, () -> filmStorage.removeLike(filmId, userId), (version, latest) -> {
+            popularityIndex.decrement(filmId, version);
+            if (latest) {
+                likesIndex.removeLike(filmId, userId);
+            }
+        });
+        return getFilmById(filmId);
+    }
 
-        return film;
+    public List<Film> getTopFilms(int count, Integer genreId, Integer year) {
+        if (genreId != null) {
+            genreStorage.getGenreById(genreId);
+        }
+        return filmCache.getAll(popularityIndex.getTopFilmIds(count, genreId, year), filmStorage::getFilmsByIds,
+                Film::getId);
     }
 
-    public Film deleteLike(Long filmId, Long userId) {
-        final Film film = filmStorage.getFilmById(filmId);
-        userStorage.getUserById(userId);  // Валидация существования пользователя
-
-        if (film.getLikes().contains(userId)) {
-            film.getLikes().remove(userId);
-            filmStorage.update(film);
-            return film;
-        } else {
-            throw new DataNotFoundException(String.format("Пользователь с id=%s не ставил лайк фильму с id=%s.", userId,
-                    filmId));
+    public List<Film> search(String query, int limit, int offset) {
+        return filmCache.getAll(searchIndex.search(query, offset, limit), filmStorage::getFilmsByIds, Film::getId);
+    }
+
+    public List<Film> getRecommendations(Long userId, int count) {
+        userService.getUserById(userId);
+        return filmCache.getAll(likesIndex.recommend(userId, count), filmStorage::getFilmsByIds, Film::getId);
+    }
+
+    /**
+     * Пишет изменение лайка в хранилище вне блокировки фильма, затем под блокировкой обновляет кэш и индексы.
+     * Параллельные добавление и удаление одного лайка могут дойти до индексов в обратном порядке, поэтому изменения
+     * пары упорядочиваются по версии фильма, которую вернуло хранилище: {@code updateIndexes} получает
+     * {@code latest = false}, если изменение этой пары с большей версией уже применено. Счетчик лайков меняется
+     * в любом случае — прибавления и вычитания перестановочны, а версия защищает рейтинг от повторного учета.
+     * Версии пар помнятся, только пока изменения фильма идут в хранилище.
+     */
+    private void changeLike(long filmId, long userId, LongSupplier change, IndexUpdate updateIndexes) {
+        withFilmLock(filmId, () -> likeChanges.computeIfAbsent(filmId, id -> new LikeChanges()).running++);
+        long version = 0;
+        try {
+            version = change.getAsLong();
+        } finally {
+            long changedVersion = version;
+            withFilmLock(filmId, () -> {
+                LikeChanges changes = likeChanges.get(filmId);
+                if (changedVersion != 0) {
+                    filmCache.invalidate(filmId);
+                    boolean latest = changes.versions.getOrDefault(userId, 0L) < changedVersion;
+                    if (latest) {
+                        changes.versions.put(userId, changedVersion);
+                    }
+                    updateIndexes.apply(changedVersion, latest);
+                }
+                if (--changes.running == 0) {
+                    likeChanges.remove(filmId);
+                }
+                return null;
+            });
+        }
+    }
+
+    private <T> T withFilmLock(long filmId, Supplier<T> action) {
+        ReentrantLock lock = filmLocks[(Long.hashCode(filmId) & Integer.MAX_VALUE) % FILM_LOCK_STRIPES];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
         }
     }
 
-    public List<Film> getTopFilms(int count) {
-        return filmStorage.getAll().stream()
-                .sorted((f1, f2) -> f2.getLikes().size() - f1.getLikes().size())
-                .limit(count)
-                .collect(Collectors.toList());
+    @FunctionalInterface
+    private interface IndexUpdate {
+        void apply(long version, boolean latest);
+    }
+
+    private static class LikeChanges {
+        // id пользователя -> наибольшая версия уже примененного изменения его лайка
+        final Map<Long, Long> versions = new HashMap<>();
+        int running;
     }
 }
@@ -0,0 +1,331 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FriendSet;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Граф дружб в памяти для предложений друзей. Основа графа — два снимка в формате CSR: для каждого пользователя
+ * непрерывный участок массива {@code int} с номерами тех, кого он добавил в друзья, и тех, кто добавил его.
+ * На ребро приходится по четыре байта в каждом направлении, объектов на ребро нет.
+ * <p>
+ * Снимки не изменяются. Изменения дружб записываются в наложение: для затронутого пользователя хранится полный
+ * отсортированный список друзей, который заменяется целиком. Когда в наложении набирается
+ * {@code compact-threshold} списков, снимки перестраиваются вместе с наложением. Списки подписчиков меняются внутри
+ * изменения списка друзей, поэтому изменения дружб одного пользователя не перемешиваются. Чтение идет без блокировок,
+ * блокировка записи берется только на время перестроения.
+ */
+@Slf4j
+@Component
+public class FriendGraph {
+
+    private static final long[] NONE = new long[0];
+
+    private final UserStorage userStorage;
+    private final int compactThreshold;
+    private final long maxScannedEdges;
+
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final ConcurrentMap<Long, long[]> changedFriends = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, long[]> changedFollowers = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot = Snapshot.build(new EdgeList());
+
+    public FriendGraph(UserStorage userStorage,
+                       @Value("${filmorate.friends.graph.compact-threshold:10000}") int compactThreshold,
+                       @Value("${filmorate.friends.suggestions.max-scanned-edges:1000000}") long maxScannedEdges) {
+        this.userStorage = userStorage;
+        this.compactThreshold = compactThreshold;
+        this.maxScannedEdges = maxScannedEdges;
+    }
+
+    @PostConstruct
+    public void refresh() {
+        EdgeList edges = new EdgeList();
+        userStorage.streamAll(user -> user.getFriends().forEach((friendId, isConfirmed) ->
+                edges.add(user.getId(), friendId)));
+
+        compactionLock.writeLock().lock();
+        try {
+            snapshot = Snapshot.build(edges);
+            changedFriends.clear();
+            changedFollowers.clear();
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+        log.debug("Граф дружб построен: пользователей {}, дружб {}.", snapshot.ids.length, edges.size);
+    }
+
+    public void addFriendship(long userId, long friendId) {
+        update(() -> changedFriends.compute(userId, (id, friends) -> {
+            changedFollowers.compute(friendId, (followedId, followers) ->
+                    SortedIds.insert(followers != null ? followers : snapshot.row(followedId, true), userId));
+            return SortedIds.insert(friends != null ? friends : snapshot.row(id, false), friendId);
+        }));
+    }
+
+    public void removeFriendship(long userId, long friendId) {
+        update(() -> changedFriends.compute(userId, (id, friends) -> {
+            changedFollowers.compute(friendId, (followedId, followers) ->
+                    SortedIds.delete(followers != null ? followers : snapshot.row(followedId, true), userId));
+            return SortedIds.delete(friends != null ? friends : snapshot.row(id, false), friendId);
+        }));
+    }
+
+    // Список друзей заменяется за одно вычисление в changedFriends: параллельное изменение друзей того же
+    // пользователя применяется целиком до или после замены, а не между чтением старого списка и записью разницы
+    public void setFriends(long userId, FriendSet friends) {
+        long[] updated = friends.friendIds().toArray();
+        update(() -> changedFriends.compute(userId, (id, current) -> {
+            long[] previous = current != null ? current : snapshot.row(id, false);
+            for (long friendId : previous) {
+                if (Arrays.binarySearch(updated, friendId) < 0) {
+                    changedFollowers.compute(friendId, (followedId, followers) ->
+                            SortedIds.delete(followers != null ? followers : snapshot.row(followedId, true), id));
+                }
+            }
+            for (long friendId : updated) {
+                if (Arrays.binarySearch(previous, friendId) < 0) {
+                    changedFollowers.compute(friendId, (followedId, followers) ->
+                            SortedIds.insert(followers != null ? followers : snapshot.row(followedId, true), id));
+                }
+            }
+            return updated;
+        }));
+    }
+
+    /**
+     * Возвращает до {@code limit} id пользователей, которых нет в друзьях у {@code userId}, по убыванию числа общих
+     * друзей, при равенстве — по возрастанию id. Общие друзья считаются так же, как в
+     * {@code GET /users/{id}/friends/common/{otherId}}: это те, кого добавили в друзья оба пользователя.
+     * Друзья перебираются начиная с тех, у кого меньше подписчиков, пока число просмотренных ребер не превысит
+     * {@code max-scanned-edges}, поэтому хабы с десятками тысяч друзей не делают ответ неограниченно долгим.
+     */
+    public List<Long> suggest(long userId, int limit) {
+        long[] friends = friendsOf(userId);
+        if (friends.length == 0) {
+            return List.of();
+        }
+
+        // Число подписчиков в старших битах, позиция друга в младших: сортировка примитивов без компаратора
+        long[] order = new long[friends.length];
+        for (int i = 0; i < friends.length; i++) {
+            order[i] = (long) followersCount(friends[i]) << 32 | i;
+        }
+        Arrays.sort(order);
+
+        IdCounter mutualFriends = new IdCounter(friends.length);
+        long scanned = 0;
+        for (int i = 0; i < order.length; i++) {
+            scanned += order[i] >>> 32;
+            if (i > 0 && scanned > maxScannedEdges) {
+                break;
+            }
+            forEachFollower(friends[(int) order[i]], candidateId -> {
+                if (candidateId != userId && Arrays.binarySearch(friends, candidateId) < 0) {
+                    mutualFriends.add(candidateId, 1);
+                }
+            });
+        }
+
+        return Arrays.stream(mutualFriends.top(limit)).boxed().collect(Collectors.toList());
+    }
+
+    private void update(Runnable change) {
+        compactionLock.readLock().lock();
+        try {
+            change.run();
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        if (changedFriends.size() + changedFollowers.size() > compactThreshold) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        compactionLock.writeLock().lock();
+        try {
+            if (changedFriends.size() + changedFollowers.size() <= compactThreshold) {
+                return; // Граф уже перестроен другим потоком
+            }
+            Snapshot current = snapshot;
+            EdgeList edges = new EdgeList();
+            for (int node = 0; node < current.ids.length; node++) {
+                long userId = current.ids[node];
+                if (!changedFriends.containsKey(userId)) {
+                    for (int i = current.friendOffsets[node]; i < current.friendOffsets[node + 1]; i++) {
+                        edges.add(userId, current.ids[current.friends[i]]);
+                    }
+                }
+            }
+            changedFriends.forEach((userId, friends) -> {
+                for (long friendId : friends) {
+                    edges.add(userId, friendId);
+                }
+            });
+
+            // Сначала публикуется новый снимок, затем очищается наложение: списки в наложении совпадают со снимком
+            snapshot = Snapshot.build(edges);
+            changedFriends.clear();
+            changedFollowers.clear();
+            log.debug("Граф дружб перестроен: пользователей {}, дружб {}.", snapshot.ids.length, edges.size);
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    private long[] friendsOf(long userId) {
+        long[] changed = changedFriends.get(userId);
+        return changed != null ? changed : snapshot.row(userId, false);
+    }
+
+    private int followersCount(long userId) {
+        long[] changed = changedFollowers.get(userId);
+        return changed != null ? changed.length : snapshot.degree(userId, true);
+    }
+
+    private void forEachFollower(long userId, LongConsumer action) {
+        long[] changed = changedFollowers.get(userId);
+        if (changed != null) {
+            for (long followerId : changed) {
+                action.accept(followerId);
+            }
+        } else {
+            snapshot.forEach(userId, true, action);
+        }
+    }
+
+    /**
+     * Неизменяемые списки смежности в формате CSR. Пользователь с номером {@code i} — это {@code ids[i]},
+     * его друзья — {@code friends[friendOffsets[i], friendOffsets[i + 1])}, подписчики — аналогично в
+     * {@code followers}. Внутри участка номера отсортированы, а значит, отсортированы и id.
+     */
+    private static final class Snapshot {
+
+        private final long[] ids;
+        private final int[] friendOffsets;
+        private final int[] friends;
+        private final int[] followerOffsets;
+        private final int[] followers;
+
+        private Snapshot(long[] ids, int[] friendOffsets, int[] friends, int[] followerOffsets, int[] followers) {
+            this.ids = ids;
+            this.friendOffsets = friendOffsets;
+            this.friends = friends;
+            this.followerOffsets = followerOffsets;
+            this.followers = followers;
+        }
+
+        static Snapshot build(EdgeList edges) {
+            int count = edges.size;
+            long[] sources = edges.sources;
+            long[] targets = edges.targets;
+            long[] ids = new long[count * 2];
+            System.arraycopy(sources, 0, ids, 0, count);
+            System.arraycopy(targets, 0, ids, count, count);
+            Arrays.sort(ids);
+            int unique = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (unique == 0 || ids[unique - 1] != ids[i]) {
+                    ids[unique++] = ids[i];
+                }
+            }
+            ids = Arrays.copyOf(ids, unique);
+
+            int[] sourceNodes = new int[count];
+            int[] targetNodes = new int[count];
+            for (int i = 0; i < count; i++) {
+                sourceNodes[i] = Arrays.binarySearch(ids, sources[i]);
+                targetNodes[i] = Arrays.binarySearch(ids, targets[i]);
+            }
+            int[] friendOffsets = new int[unique + 1];
+            int[] friends = group(sourceNodes, targetNodes, count, friendOffsets);
+            int[] followerOffsets = new int[unique + 1];
+            int[] followers = group(targetNodes, sourceNodes, count, followerOffsets);
+            return new Snapshot(ids, friendOffsets, friends, followerOffsets, followers);
+        }
+
+        // Сортировка подсчетом по вершине-источнику, затем сортировка каждого участка
+        private static int[] group(int[] from, int[] to, int count, int[] offsets) {
+            for (int i = 0; i < count; i++) {
+                offsets[from[i] + 1]++;
+            }
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] += offsets[i - 1];
+            }
+            int[] grouped = new int[count];
+            int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int i = 0; i < count; i++) {
+                grouped[next[from[i]]++] = to[i];
+            }
+            for (int node = 0; node < offsets.length - 1; node++) {
+                Arrays.sort(grouped, offsets[node], offsets[node + 1]);
+            }
+            return grouped;
+        }
+
+        int degree(long userId, boolean incoming) {
+            int node = Arrays.binarySearch(ids, userId);
+            if (node < 0) {
+                return 0;
+            }
+            int[] offsets = incoming ? followerOffsets : friendOffsets;
+            return offsets[node + 1] - offsets[node];
+        }
+
+        long[] row(long userId, boolean incoming) {
+            int node = Arrays.binarySearch(ids, userId);
+            if (node < 0) {
+                return NONE;
+            }
+            int[] offsets = incoming ? followerOffsets : friendOffsets;
+            int[] nodes = incoming ? followers : friends;
+            long[] row = new long[offsets[node + 1] - offsets[node]];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = ids[nodes[offsets[node] + i]];
+            }
+            return row;
+        }
+
+        void forEach(long userId, boolean incoming, LongConsumer action) {
+            int node = Arrays.binarySearch(ids, userId);
+            if (node < 0) {
+                return;
+            }
+            int[] offsets = incoming ? followerOffsets : friendOffsets;
+            int[] nodes = incoming ? followers : friends;
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                action.accept(ids[nodes[i]]);
+            }
+        }
+    }
+
+    // Ребра на двух растущих массивах примитивов, без объекта на ребро
+    private static final class EdgeList {
+
+        private long[] sources = new long[16];
+        private long[] targets = new long[16];
+        private int size;
+
+        void add(long source, long target) {
+            if (size == sources.length) {
+                sources = Arrays.copyOf(sources, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            sources[size] = source;
+            targets[size++] = target;
+        }
+    }
+}
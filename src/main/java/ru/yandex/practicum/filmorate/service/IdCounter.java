@@ -0,0 +1,167 @@
+package ru.yandex.practicum.filmorate.service;
+
+/**
+ * Счетчики по id без упаковки: открытая адресация с линейным пробированием на массивах примитивов.
+ * Id должны быть положительными, ноль обозначает пустую ячейку. Класс не потокобезопасен.
+ */
+final class IdCounter {
+
+    private long[] ids;
+    private int[] counts;
+    private int mask;
+    private int size;
+
+    IdCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2) - 1) << 1;
+        ids = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    void add(long id, int delta) {
+        int slot = slotOf(id);
+        while (true) {
+            long current = ids[slot];
+            if (current == id) {
+                counts[slot] += delta;
+                return;
+            }
+            if (current == 0) {
+                ids[slot] = id;
+                counts[slot] = delta;
+                if (++size * 2 > ids.length) {
+                    grow();
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int get(long id) {
+        int slot = slotOf(id);
+        while (true) {
+            long current = ids[slot];
+            if (current == id) {
+                return counts[slot];
+            }
+            if (current == 0) {
+                return 0;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void addAll(IdCounter other) {
+        for (int i = 0; i < other.ids.length; i++) {
+            if (other.ids[i] != 0) {
+                add(other.ids[i], other.counts[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Возвращает до {@code limit} id с наибольшими счетчиками: по убыванию счетчика, при равенстве — по возрастанию
+     * id. Отбор идет через кучу размера {@code limit}, все счетчики не сортируются.
+     */
+    long[] top(int limit) {
+        int heapCapacity = Math.min(limit, size);
+        long[] heapIds = new long[heapCapacity];
+        int[] heapCounts = new int[heapCapacity];
+        int heapSize = 0;
+        for (int i = 0; i < ids.length && heapCapacity > 0; i++) {
+            long id = ids[i];
+            if (id == 0) {
+                continue;
+            }
+            if (heapSize < heapCapacity) {
+                heapIds[heapSize] = id;
+                heapCounts[heapSize] = counts[i];
+                siftUp(heapIds, heapCounts, heapSize++);
+            } else if (isBetter(counts[i], id, heapCounts[0], heapIds[0])) {
+                heapIds[0] = id;
+                heapCounts[0] = counts[i];
+                siftDown(heapIds, heapCounts, heapSize);
+            }
+        }
+
+        // В корне кучи худший из отобранных, поэтому результат заполняется с конца
+        long[] result = new long[heapSize];
+        for (int last = heapSize - 1; last >= 0; last--) {
+            result[last] = heapIds[0];
+            heapIds[0] = heapIds[last];
+            heapCounts[0] = heapCounts[last];
+            siftDown(heapIds, heapCounts, last);
+        }
+        return result;
+    }
+
+    private int slotOf(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldIds = ids;
+        int[] oldCounts = counts;
+        ids = new long[oldIds.length * 2];
+        counts = new int[oldIds.length * 2];
+        mask = ids.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            long id = oldIds[i];
+            if (id != 0) {
+                int slot = slotOf(id);
+                while (ids[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = id;
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static boolean isBetter(int count, long id, int otherCount, long otherId) {
+        return count > otherCount || count == otherCount && id < otherId;
+    }
+
+    private static void siftUp(long[] heapIds, int[] heapCounts, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isBetter(heapCounts[parent], heapIds[parent], heapCounts[index], heapIds[index])) {
+                return;
+            }
+            swap(heapIds, heapCounts, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(long[] heapIds, int[] heapCounts, int heapSize) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < heapSize; child++) {
+                if (isBetter(heapCounts[worst], heapIds[worst], heapCounts[child], heapIds[child])) {
+                    worst = child;
+                }
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(heapIds, heapCounts, worst, index);
+            index = worst;
+        }
+    }
+
+    private static void swap(long[] heapIds, int[] heapCounts, int i, int j) {
+        long id = heapIds[i];
+        heapIds[i] = heapIds[j];
+        heapIds[j] = id;
+        int count = heapCounts[i];
+        heapCounts[i] = heapCounts[j];
+        heapCounts[j] = count;
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.Arrays;
+
+/**
+ * Изменение отсортированных массивов id без повторов, которые индексы публикуют в конкурентных картах. Массив
+ * не изменяется: возвращается новый массив или тот же, если id уже есть или его нет. {@code null} считается пустым
+ * массивом.
+ */
+final class SortedIds {
+
+    private static final long[] NONE = new long[0];
+
+    private SortedIds() {
+    }
+
+    static long[] insert(long[] ids, long id) {
+        if (ids == null) {
+            return new long[]{id};
+        }
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return ids;
+        }
+        position = -position - 1;
+        long[] updated = new long[ids.length + 1];
+        System.arraycopy(ids, 0, updated, 0, position);
+        updated[position] = id;
+        System.arraycopy(ids, position, updated, position + 1, ids.length - position);
+        return updated;
+    }
+
+    static long[] delete(long[] ids, long id) {
+        if (ids == null) {
+            return NONE;
+        }
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return ids;
+        }
+        long[] updated = new long[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, position);
+        System.arraycopy(ids, position + 1, updated, position, ids.length - position - 1);
+        return updated;
+    }
+
+    // Для карт, где отсутствие ключа означает пустой список: пустой результат удаляет ключ из compute
+    static long[] deleteOrNull(long[] ids, long id) {
+        long[] updated = delete(ids, id);
+        return updated.length == 0 ? null : updated;
+    }
+}
@@ -1,75 +1,120 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.model.FriendSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 @Service
 @RequiredArgsConstructor
 public class UserService {
 
-    @Qualifier("userDbStorage")
+    private static final int USER_LOCK_STRIPES = 64;
+
     private final UserStorage userStorage;
+    private final FriendGraph friendGraph;
+    private final EntityCache<Long, User> userCache;
+
+    // Изменение друзей пишется в хранилище, в кэш и в граф дружб под блокировкой пользователя: иначе граф может
+    // применить два параллельных изменения в порядке, обратном записи в хранилище
+    private final ReentrantLock[] userLocks = IntStream.range(0, USER_LOCK_STRIPES)
+            .mapToObj(i -> new ReentrantLock())
+            .toArray(ReentrantLock[]::new);
 
     public List<User> getAll() {
         return userStorage.getAll();
     }
 
+    public List<User> getPage(long afterId, int limit) {
+        return userStorage.getPage(afterId, limit);
+    }
+
+    public void streamAll(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
     public User create(User user) {
         validateName(user);
-        return userStorage.create(user);
+        User created = userStorage.create(user);
+        // Хранилища не сохраняют друзей из тела запроса при создании, поэтому в графе у нового пользователя нет ребер
+        friendGraph.setFriends(created.getId(), new FriendSet());
+        return created;
+    }
+
+    public List<User> createAll(List<User> users) {
+        users.forEach(this::validateName);
+        List<User> created = userStorage.createAll(users);
+        created.forEach(user -> friendGraph.setFriends(user.getId(), new FriendSet()));
+        return created;
     }
 
     public User update(User user) {
         validateName(user);
-        return userStorage.update(user);
+        return withUserLock(user.getId(), () -> {
+            User updated = userStorage.update(user);
+            userCache.invalidate(updated.getId());
+            friendGraph.setFriends(updated.getId(), updated.getFriends());
+            return updated;
+        });
     }
 
     public User getUserById(Long id) {
-        return userStorage.getUserById(id);
+        return userCache.get(id, userStorage::getUserById);
     }
 
-    public User addFriend(Long userId, Long friendId) {
-        User user = userStorage.getUserById(userId);
-        userStorage.getUserById(friendId);
-
-        user.getFriends().add(Friendship.builder().friendId(friendId).build());
-        userStorage.update(user);
+    public long getUserVersion(Long id) {
+        return userStorage.getUserVersion(id);
+    }
 
-        return user;
+    public User addFriend(Long userId, Long friendId) {
+        withUserLock(userId, () -> {
+            userStorage.addFriendship(userId, friendId);
+            userCache.invalidate(userId);
+            friendGraph.addFriendship(userId, friendId);
+            return null;
+        });
+        return getUserById(userId);
     }
 
     public User deleteFriend(Long userId, Long friendId) {
-        User user = userStorage.getUserById(userId);
-        userStorage.getUserById(friendId);
-
-        user.getFriends().remove(Friendship.builder().friendId(friendId).build());
-        userStorage.update(user);
-
-        return user;
+        withUserLock(userId, () -> {
+            userStorage.removeFriendship(userId, friendId);
+            userCache.invalidate(userId);
+            friendGraph.removeFriendship(userId, friendId);
+            return null;
+        });
+        return getUserById(userId);
     }
 
-    public List<User> getFriends(Long userId) {
-        return userStorage.getUserById(userId).getFriends().stream()
-                .map(f -> userStorage.getUserById(f.getFriendId()))
-                .collect(Collectors.toList());
+    public List<User> getFriends(Long userId, Integer limit, int offset) {
+        return userStorage.getFriends(userId, limit, offset);
     }
 
     public List<User> getCommonFriends(Long id, Long otherId) {
-        Set<Friendship> friendsOfFirstUser = userStorage.getUserById(id).getFriends();
-        Set<Friendship> friendsOfSecondUser = userStorage.getUserById(otherId).getFriends();
+        return userStorage.getCommonFriends(id, otherId);
+    }
+
+    public List<User> getFriendSuggestions(Long userId, int count) {
+        getUserById(userId);
+        return userCache.getAll(friendGraph.suggest(userId, count), userStorage::getUsersByIds, User::getId);
+    }
 
-        return friendsOfFirstUser.stream()
-                .filter(friendsOfSecondUser::contains)
-                .map(f -> userStorage.getUserById(f.getFriendId()))
-                .collect(Collectors.toList());
+    private <T> T withUserLock(long userId, Supplier<T> action) {
+        ReentrantLock lock = userLocks[(Long.hashCode(userId) & Integer.MAX_VALUE) % USER_LOCK_STRIPES];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void validateName(User user) {
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.CounterDrift;
+
+public interface CounterStorage {
+
+    CounterDrift checkDrift();
+
+    /**
+     * Пересчитывает счетчики по таблицам связей и возвращает исправленное расхождение.
+     */
+    CounterDrift backfill();
+}
@@ -1,16 +1,42 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikesCount;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     List<Film> getAll();
 
+    List<Film> getPage(long afterId, int limit);
+
+    void streamAll(Consumer<Film> consumer);
+
     Film create(Film film);
 
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film);
 
     Film getFilmById(Long id);
+
+    long getFilmVersion(Long id);
+
+    List<Film> getFilmsByIds(List<Long> ids);
+
+    // id фильма -> число лайков вместе с версией фильма, при которой оно прочитано
+    Map<Long, LikesCount> getLikesCounts();
+
+    // Фильмы, в которых заполнены только id, дата релиза и жанры, — для рейтингов по жанрам и годам
+    List<Film> getReleaseDatesAndGenres();
+
+    // Возвращает версию фильма после добавления лайка или 0, если лайк уже был. Версия растет при каждом изменении,
+    // поэтому упорядочивает изменения лайков одной пары
+    long addLike(Long filmId, Long userId);
+
+    // Возвращает версию фильма после удаления лайка
+    long removeLike(Long filmId, Long userId);
 }
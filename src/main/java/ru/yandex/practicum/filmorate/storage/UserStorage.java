@@ -3,14 +3,35 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     List<User> getAll();
 
+    List<User> getPage(long afterId, int limit);
+
+    void streamAll(Consumer<User> consumer);
+
     User create(User user);
 
+    List<User> createAll(List<User> users);
+
     User update(User user);
 
     User getUserById(Long id);
+
+    List<User> getUsersByIds(List<Long> ids);
+
+    long getUserVersion(Long id);
+
+    List<User> getFriends(Long userId, Integer limit, int offset);
+
+    List<User> getCommonFriends(Long userId, Long otherId);
+
+    void addFriendship(Long userId, Long friendId);
+
+    void removeFriendship(Long userId, Long friendId);
+
+    void confirmFriendship(Long userId, Long friendId);
 }
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.CounterDrift;
+import ru.yandex.practicum.filmorate.storage.CounterStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Проверка и пересчет {@code films.likes_count} и {@code users.friends_count}. Пути записи хранилищ меняют
+ * счетчик в той же транзакции, что и связь, поэтому расхождение означает ошибку или ручную правку данных.
+ */
+@Component
+@Profile("!in-memory")
+@RequiredArgsConstructor
+public class CounterDbStorage implements CounterStorage {
+
+    private static final String FILMS_DRIFT = "select f.film_id " +
+            "from films as f " +
+            "left join (select film_id, count(*) as likes from likes group by film_id) as l " +
+            "on l.film_id = f.film_id " +
+            "where f.likes_count <> coalesce(l.likes, 0) " +
+            "order by f.film_id";
+    private static final String USERS_DRIFT = "select u.user_id " +
+            "from users as u " +
+            "left join (select user_id, count(*) as friends from friendships group by user_id) as fr " +
+            "on fr.user_id = u.user_id " +
+            "where u.friends_count <> coalesce(fr.friends, 0) " +
+            "order by u.user_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional(readOnly = true)
+    public CounterDrift checkDrift() {
+        List<Long> filmIds = new ArrayList<>();
+        long films = collectSample(FILMS_DRIFT, filmIds);
+        List<Long> userIds = new ArrayList<>();
+        long users = collectSample(USERS_DRIFT, userIds);
+        return CounterDrift.builder()
+                .films(films)
+                .filmIds(filmIds)
+                .users(users)
+                .userIds(userIds)
+                .build();
+    }
+
+    @Override
+    @Transactional
+    public CounterDrift backfill() {
+        CounterDrift drift = checkDrift();
+        // Версия не меняется: счетчики не входят в представление фильма и пользователя
+        if (drift.getFilms() > 0) {
+            jdbcTemplate.update("update films as f " +
+                    "set likes_count = (select count(*) from likes as l where l.film_id = f.film_id) " +
+                    "where likes_count <> (select count(*) from likes as l where l.film_id = f.film_id)");
+        }
+        if (drift.getUsers() > 0) {
+            jdbcTemplate.update("update users as u " +
+                    "set friends_count = (select count(*) from friendships as fr where fr.user_id = u.user_id) " +
+                    "where friends_count <> (select count(*) from friendships as fr where fr.user_id = u.user_id)");
+        }
+        return drift;
+    }
+
+    private long collectSample(String sql, List<Long> sample) {
+        long[] count = new long[1];
+        jdbcTemplate.query(sql, rs -> {
+            if (sample.size() < CounterDrift.SAMPLE_SIZE) {
+                sample.add(rs.getLong(1));
+            }
+            count[0]++;
+        });
+        return count[0];
+    }
+}
@@ -1,14 +1,20 @@
 package ru.yandex.practicum.filmorate.storage.db;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.model.LikesCount;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
@@ -16,28 +22,83 @@ import ru.yandex.practicum.filmorate.storage.MpaStorage;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component("filmDbStorage")
-@Primary
+@Profile("!in-memory")
 @RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
 
+    private static final String SELECT_FILMS = "select f.* from films as f ";
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
     private final GenreStorage genreStorage;
     private final MpaStorage mpaStorage;
 
     @Override
     public List<Film> getAll() {
-        String sql = "select * from films";
-        return jdbcTemplate.query(sql, this::mapFilm);
+        String sql = SELECT_FILMS + "order by f.film_id";
+        List<Film> films = jdbcTemplate.query(sql, this::mapFilm);
+
+        Map<Long, Film> filmsById = films.stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        loadGenres(filmsById, "", new Object[0]);
+        loadLikes(filmsById, "", new Object[0]);
+
+        return films;
+    }
+
+    @Override
+    public List<Film> getPage(long afterId, int limit) {
+        String sql = SELECT_FILMS + "where f.film_id > ? order by f.film_id limit ?";
+        List<Film> films = jdbcTemplate.query(sql, this::mapFilm, afterId, limit);
+
+        addGenresAndLikes(films);
+        return films;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Film> consumer) {
+        // Фильмы, жанры и лайки читаются тремя курсорами в порядке film_id: три запроса при любом числе фильмов,
+        // в памяти только текущий фильм
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(SELECT_FILMS + "order by f.film_id");
+                 KeyedCursor genres = KeyedCursor.open(connection,
+                         "select film_id, genre_id from film_genre order by film_id, genre_id", "film_id",
+                         STREAM_FETCH_SIZE);
+                 KeyedCursor likes = KeyedCursor.open(connection,
+                         "select film_id, user_id from likes order by film_id, user_id", "film_id",
+                         STREAM_FETCH_SIZE)) {
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Film film = mapFilm(rs, 0);
+                        genres.forEachRow(film.getId(), row ->
+                                film.getGenres().add(genreStorage.getGenreById(row.getInt("genre_id"))));
+                        likes.forEachRow(film.getId(), row -> film.getLikes().add(row.getLong("user_id")));
+                        consumer.accept(film);
+                    }
+                }
+            }
+            return null;
+        });
     }
 
     @Override
+    @Transactional
     public Film create(Film film) {
         String sql = "insert into films (name, description, release_date, duration, mpa_id) " +
                 "values (?, ?, ?, ?, ?)";
@@ -61,12 +122,51 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        String sql = "insert into films (name, description, release_date, duration, mpa_id) " +
+                "values (?, ?, ?, ?, ?)";
+
+        // Фильмы вставляются одним пакетом, id забираются из сгенерированных ключей в порядке вставки
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql, new String[]{"film_id"})) {
+                for (Film film : films) {
+                    ps.setString(1, film.getName());
+                    ps.setString(2, film.getDescription());
+                    ps.setString(3, String.valueOf(film.getReleaseDate()));
+                    ps.setString(4, String.valueOf(film.getDuration()));
+                    ps.setString(5, String.valueOf(film.getMpa().getId()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        keys.next();
+                        film.setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+
+        List<Object[]> filmGenres = new ArrayList<>();
+        for (Film film : films) {
+            film.getGenres().forEach(genre -> filmGenres.add(new Object[]{genre.getId(), film.getId()}));
+        }
+        batchUpdate("insert into film_genre (genre_id, film_id) values (?, ?)", filmGenres);
+        return films;
+    }
+
+    @Override
+    @Transactional
     public Film update(Film film) {
         final long filmId = film.getId();
-        String sql = "update films " +
-                "set name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ? " +
-                "where film_id = ?";
-        int rowsUpdated = jdbcTemplate.update(sql, // Проверка количества измененных записей
+        // Новая версия читается тем же запросом, что обновляет фильм; пустой результат — фильма нет
+        String sql = "select version from final table (update films " +
+                "set name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ?, version = version + 1 " +
+                "where film_id = ?)";
+        List<Long> versions = jdbcTemplate.queryForList(sql, Long.class,
                 film.getName(),
                 film.getDescription(),
                 film.getReleaseDate(),
@@ -74,9 +174,10 @@ public class FilmDbStorage implements FilmStorage {
                 film.getMpa().getId(),
                 filmId);
 
-        if (rowsUpdated == 0) {
+        if (versions.isEmpty()) {
             throw new DataNotFoundException("Не удалось найти фильм с id=" + filmId);
         }
+        film.setVersion(versions.get(0));
 
         Set<Genre> genresBeforeUpdate = getGenresByFilmId(filmId);
 
@@ -88,46 +189,192 @@ public class FilmDbStorage implements FilmStorage {
         genresToAdd.removeAll(genresBeforeUpdate);
         addFilmGenres(filmId, genresToAdd);
 
-        film.getGenres().forEach(genre -> genre.setName(genreStorage.getGenreById(genre.getId()).getName()));
+        IdSet likesBeforeUpdate = getLikesByFilmId(filmId);
 
-        Set<Long> likesBeforeUpdate = new HashSet<>(getLikesByFilmId(filmId));
-
-        Set<Long> likesToDelete = new HashSet<>(likesBeforeUpdate);
-        likesToDelete.removeAll(film.getLikes());
+        IdSet likesToDelete = likesBeforeUpdate.difference(film.getLikes());
         deleteLikes(filmId, likesToDelete);
 
-        Set<Long> likesToAdd = new HashSet<>(film.getLikes());
-        likesToAdd.removeAll(likesBeforeUpdate);
+        IdSet likesToAdd = film.getLikes().difference(likesBeforeUpdate);
         addLikes(filmId, likesToAdd);
 
-//      В тестах требуются отсортированные жанры при обновлении фильма, а у данного объекта hashset вместо treeset
-        film.setGenres(new TreeSet<>(film.getGenres()));
+        if (!likesToDelete.isEmpty() || !likesToAdd.isEmpty()) {
+            updateLikesCount(filmId);
+        }
+
+//      В тестах требуются отсортированные жанры при обновлении фильма, а у данного объекта hashset вместо treeset.
+//      Жанры неизменяемы, поэтому названия берутся заменой на экземпляры из справочника
+        film.setGenres(film.getGenres().stream()
+                .map(genre -> genreStorage.getGenreById(genre.getId()))
+                .collect(Collectors.toCollection(TreeSet::new)));
 
         return film;
     }
 
     @Override
     public Film getFilmById(Long id) {
-        String sql = "select * from films where film_id = ?";
-        return jdbcTemplate.query(sql, this::mapFilm, id).stream().findAny()
+        String sql = SELECT_FILMS + "where f.film_id = ?";
+        Film film = jdbcTemplate.query(sql, this::mapFilm, id).stream().findAny()
                 .orElseThrow(() -> new DataNotFoundException("Не удалось найти фильм с id=" + id));
+
+        addGenresAndLikes(List.of(film));
+        return film;
     }
 
-    private Film mapFilm(ResultSet rs, int rowNum) throws SQLException {
+    @Override
+    public long getFilmVersion(Long id) {
+        String sql = "select version from films where film_id = ?";
+        return jdbcTemplate.queryForList(sql, Long.class, id).stream().findAny()
+                .orElseThrow(() -> new DataNotFoundException("Не удалось найти фильм с id=" + id));
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        String sql = SELECT_FILMS + "where f.film_id in (" + placeholders + ")";
+        List<Film> films = jdbcTemplate.query(sql, this::mapFilm, ids.toArray());
+        addGenresAndLikes(films);
+
+        Map<Long, Film> filmsById = films.stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        return ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<Long, LikesCount> getLikesCounts() {
+        String sql = "select film_id, likes_count, version from films";
+        Map<Long, LikesCount> likesCounts = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            likesCounts.put(rs.getLong("film_id"), LikesCount.builder()
+                    .likes(rs.getInt("likes_count"))
+                    .version(rs.getLong("version"))
+                    .build());
+        });
+        return likesCounts;
+    }
+
+    @Override
+    public List<Film> getReleaseDatesAndGenres() {
+        String sql = "select film_id, release_date from films order by film_id";
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> Film.builder()
+                .id(rs.getLong("film_id"))
+                .releaseDate(rs.getDate("release_date").toLocalDate())
+                .build());
+
+        Map<Long, Film> filmsById = films.stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        loadGenres(filmsById, "", new Object[0]);
+        return films;
+    }
+
+    @Override
+    @Transactional
+    public long addLike(Long filmId, Long userId) {
+        String sql = "insert into likes (film_id, user_id) " +
+                "select ?, ? where not exists (select 1 from likes where film_id = ? and user_id = ?)";
+        int rowsInserted;
+        try {
+            rowsInserted = jdbcTemplate.update(sql, filmId, userId, filmId, userId);
+        } catch (DuplicateKeyException e) {
+            return 0; // Лайк уже поставлен параллельным запросом
+        } catch (DataIntegrityViolationException e) {
+            throw likeNotFound(filmId, userId);
+        }
+
+        if (rowsInserted == 0) {
+            return 0;
+        }
+        return changeLikesCount(filmId, 1);
+    }
+
+    @Override
+    @Transactional
+    public long removeLike(Long filmId, Long userId) {
+        String sql = "delete from likes where film_id = ? and user_id = ?";
+        int rowsDeleted = jdbcTemplate.update(sql, filmId, userId);
+
+        if (rowsDeleted == 0) {
+            throw likeNotFound(filmId, userId);
+        }
+
+        return changeLikesCount(filmId, -1);
+    }
+
+    // Новая версия читается тем же запросом, что меняет счетчик, без отдельного обращения к БД
+    private long changeLikesCount(Long filmId, int delta) {
+        String sql = "select version from final table (update films " +
+                "set likes_count = likes_count + ?, version = version + 1 where film_id = ?)";
+        Long version = jdbcTemplate.queryForObject(sql, Long.class, delta, filmId);
+        return version == null ? 0 : version;
+    }
+
+    private DataNotFoundException likeNotFound(Long filmId, Long userId) {
+        if (!exists("select count(*) from films where film_id = ?", filmId)) {
+            return new DataNotFoundException("Не удалось найти фильм с id=" + filmId);
+        }
+        if (!exists("select count(*) from users where user_id = ?", userId)) {
+            return new DataNotFoundException("Не удалось найти пользователя с id=" + userId);
+        }
+        return new DataNotFoundException(String.format("Пользователь с id=%s не ставил лайк фильму с id=%s.",
+                userId, filmId));
+    }
 
-        Film film = Film.builder()
+    private boolean exists(String sql, Long id) {
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, id);
+        return count != null && count > 0;
+    }
+
+    private Film mapFilm(ResultSet rs, int rowNum) throws SQLException {
+        return Film.builder()
                 .id(rs.getLong("film_id"))
                 .name(rs.getString("name"))
                 .description(rs.getString("description"))
                 .releaseDate(rs.getDate("release_date").toLocalDate())
                 .duration(rs.getInt("duration"))
                 .mpa(mpaStorage.getMpaById(rs.getInt("mpa_id")))
+                .version(rs.getLong("version"))
                 .build();
+    }
+
+    private void addGenresAndLikes(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
 
-        film.getGenres().addAll(getGenresByFilmId(film.getId()));
-        film.getLikes().addAll(getLikesByFilmId(film.getId()));
+        Map<Long, Film> filmsById = films.stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        String placeholders = String.join(", ", Collections.nCopies(films.size(), "?"));
+        Object[] ids = filmsById.keySet().toArray();
 
-        return film;
+        loadGenres(filmsById, "where fg.film_id in (" + placeholders + ") ", ids);
+        loadLikes(filmsById, "where l.film_id in (" + placeholders + ") ", ids);
+    }
+
+    // Жанры и лайки подгружаются одним запросом на весь набор фильмов, а не отдельными запросами на каждый фильм
+    private void loadGenres(Map<Long, Film> filmsById, String condition, Object[] args) {
+        String sql = "select fg.film_id, fg.genre_id from film_genre as fg " + condition;
+        jdbcTemplate.query(sql, rs -> {
+            Film film = filmsById.get(rs.getLong("film_id"));
+            if (film != null) {
+                film.getGenres().add(genreStorage.getGenreById(rs.getInt("genre_id")));
+            }
+        }, args);
+    }
+
+    private void loadLikes(Map<Long, Film> filmsById, String condition, Object[] args) {
+        String sql = "select l.film_id, l.user_id from likes as l " + condition + "order by l.film_id, l.user_id";
+        jdbcTemplate.query(sql, rs -> {
+            Film film = filmsById.get(rs.getLong("film_id"));
+            if (film != null) {
+                film.getLikes().add(rs.getLong("user_id"));
+            }
+        }, args);
     }
 
     private Set<Genre> getGenresByFilmId(Long filmId) {
@@ -139,36 +386,50 @@ public class FilmDbStorage implements FilmStorage {
                 .collect(Collectors.toSet());
     }
 
-    private List<Long> getLikesByFilmId(Long filmId) {
-        String sql = "select user_id from likes where film_id = ?";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getLong("user_id"), filmId);
+    private IdSet getLikesByFilmId(Long filmId) {
+        String sql = "select user_id from likes where film_id = ? order by user_id";
+        IdSet likes = new IdSet();
+        jdbcTemplate.query(sql, rs -> {
+            likes.add(rs.getLong("user_id"));
+        }, filmId);
+        return likes;
     }
 
+    // Изменения связей отправляются одним пакетом, а не запросом на каждую строку
     private void addFilmGenres(Long filmId, Set<Genre> genres) {
-        String sql = "insert into film_genre (genre_id, film_id) values (?, ?)";
-        for (Genre genre : genres) {
-            jdbcTemplate.update(sql, genre.getId(), filmId);
-        }
+        List<Object[]> args = new ArrayList<>();
+        genres.forEach(genre -> args.add(new Object[]{genre.getId(), filmId}));
+        batchUpdate("insert into film_genre (genre_id, film_id) values (?, ?)", args);
     }
 
     private void deleteFilmGenres(Long filmId, Set<Genre> genres) {
-        String sql = "delete from film_genre where genre_id = ? and film_id = ?";
-        for (Genre genre : genres) {
-            jdbcTemplate.update(sql, genre.getId(), filmId);
-        }
+        List<Object[]> args = new ArrayList<>();
+        genres.forEach(genre -> args.add(new Object[]{genre.getId(), filmId}));
+        batchUpdate("delete from film_genre where genre_id = ? and film_id = ?", args);
     }
 
-    private void addLikes(Long filmId, Set<Long> likes) {
-        String sql = "insert into likes (film_id, user_id) values (?, ?)";
-        for (Long userId : likes) {
-            jdbcTemplate.update(sql, filmId, userId);
-        }
+    private void addLikes(Long filmId, IdSet likes) {
+        List<Object[]> args = new ArrayList<>();
+        likes.forEach(userId -> args.add(new Object[]{filmId, userId}));
+        batchUpdate("insert into likes (film_id, user_id) values (?, ?)", args);
     }
 
-    private void deleteLikes(Long filmId, Set<Long> likes) {
-        String sql = "delete from likes where film_id = ? and user_id = ?";
-        for (Long userId : likes) {
-            jdbcTemplate.update(sql, filmId, userId);
+    private void deleteLikes(Long filmId, IdSet likes) {
+        List<Object[]> args = new ArrayList<>();
+        likes.forEach(userId -> args.add(new Object[]{filmId, userId}));
+        batchUpdate("delete from likes where film_id = ? and user_id = ?", args);
+    }
+
+    private void batchUpdate(String sql, List<Object[]> args) {
+        if (!args.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, args);
         }
     }
+
+    // Счетчик лайков хранится в films, чтобы топ фильмов выбирался по индексу без подсчета лайков
+    private void updateLikesCount(Long filmId) {
+        String sql = "update films set likes_count = (select count(*) from likes where film_id = ?) " +
+                "where film_id = ?";
+        jdbcTemplate.update(sql, filmId, filmId);
+    }
 }
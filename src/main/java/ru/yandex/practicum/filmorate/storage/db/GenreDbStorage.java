@@ -1,33 +1,59 @@
 package ru.yandex.practicum.filmorate.storage.db;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class GenreDbStorage implements GenreStorage {
 
     private final JdbcTemplate jdbcTemplate;
 
+    // Справочник жанров загружается один раз при старте, индекс массива — id жанра. Жанры неизменяемы,
+    // поэтому наружу отдаются сами экземпляры справочника, и поиск жанра ничего не выделяет
+    private volatile Genre[] genresById = new Genre[0];
+
     @Override
     public List<Genre> getAll() {
-        String sql = "select * from genres order by genre_id";
-        return jdbcTemplate.query(sql, this::mapGenre);
+        return Arrays.stream(genresById)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Genre getGenreById(Integer id) {
-        String sql = "select * from genres where genre_id = ?";
-        return jdbcTemplate.query(sql, this::mapGenre, id).stream().findAny()
-                .orElseThrow(() -> new DataNotFoundException("Не удалось найти жанр с id=" + id));
+        Genre[] genres = genresById;
+        if (id == null || id < 0 || id >= genres.length || genres[id] == null) {
+            throw new DataNotFoundException("Не удалось найти жанр с id=" + id);
+        }
+        return genres[id];
+    }
+
+    @PostConstruct
+    public void refresh() {
+        String sql = "select * from genres order by genre_id";
+        List<Genre> genres = jdbcTemplate.query(sql, this::mapGenre);
+
+        int maxId = genres.isEmpty() ? -1 : genres.get(genres.size() - 1).getId();
+        Genre[] newGenresById = new Genre[maxId + 1];
+        genres.forEach(genre -> newGenresById[genre.getId()] = genre);
+
+        genresById = newGenresById;
+        log.debug("Загружено жанров: {}.", genres.size());
     }
 
     private Genre mapGenre(ResultSet rs, int rowNum) throws SQLException {
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Курсор по строкам связанной таблицы, отсортированным по ключу родительской записи. Родительские записи читаются
+ * в том же порядке, и для каждой из них курсор отдает ее строки, продвигаясь только вперед. Так выгрузка таблицы
+ * со связями выполняет по одному запросу на таблицу при любом числе записей.
+ */
+final class KeyedCursor implements AutoCloseable {
+
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final String keyColumn;
+    private boolean hasRow;
+
+    private KeyedCursor(PreparedStatement statement, String keyColumn) throws SQLException {
+        this.statement = statement;
+        this.resultSet = statement.executeQuery();
+        this.keyColumn = keyColumn;
+        this.hasRow = resultSet.next();
+    }
+
+    // Запрос должен быть отсортирован по keyColumn по возрастанию
+    static KeyedCursor open(Connection connection, String sql, String keyColumn, int fetchSize) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            statement.setFetchSize(fetchSize);
+            return new KeyedCursor(statement, keyColumn);
+        } catch (SQLException | RuntimeException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    // Ключи должны передаваться по возрастанию; строки с меньшим ключом, чем переданный, пропускаются
+    void forEachRow(long key, RowCallbackHandler action) throws SQLException {
+        while (hasRow) {
+            long rowKey = resultSet.getLong(keyColumn);
+            if (rowKey > key) {
+                return;
+            }
+            if (rowKey == key) {
+                action.processRow(resultSet);
+            }
+            hasRow = resultSet.next();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        statement.close();
+    }
+}
@@ -1,33 +1,59 @@
 package ru.yandex.practicum.filmorate.storage.db;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class MpaDbStorage implements MpaStorage {
 
     private final JdbcTemplate jdbcTemplate;
 
+    // Справочник рейтингов загружается один раз при старте, индекс массива — id рейтинга. Рейтинги неизменяемы,
+    // поэтому наружу отдаются сами экземпляры справочника, и поиск рейтинга ничего не выделяет
+    private volatile Mpa[] mpaById = new Mpa[0];
+
     @Override
     public List<Mpa> getAll() {
-        String sql = "select * from mpa_rating order by mpa_id";
-        return jdbcTemplate.query(sql, this::mapMpa);
+        return Arrays.stream(mpaById)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Mpa getMpaById(Integer id) {
-        String sql = "select * from mpa_rating where mpa_id = ?";
-        return jdbcTemplate.query(sql, this::mapMpa, id).stream().findAny()
-                .orElseThrow(() -> new DataNotFoundException("Не удалось найти рейтинг с id=" + id));
+        Mpa[] ratings = mpaById;
+        if (id == null || id < 0 || id >= ratings.length || ratings[id] == null) {
+            throw new DataNotFoundException("Не удалось найти рейтинг с id=" + id);
+        }
+        return ratings[id];
+    }
+
+    @PostConstruct
+    public void refresh() {
+        String sql = "select * from mpa_rating order by mpa_id";
+        List<Mpa> ratings = jdbcTemplate.query(sql, this::mapMpa);
+
+        int maxId = ratings.isEmpty() ? -1 : ratings.get(ratings.size() - 1).getId();
+        Mpa[] newMpaById = new Mpa[maxId + 1];
+        ratings.forEach(mpa -> newMpaById[mpa.getId()] = mpa);
+
+        mpaById = newMpaById;
+        log.debug("Загружено рейтингов MPA: {}.", ratings.size());
     }
 
     private Mpa mapMpa(ResultSet rs, int rowNum) throws SQLException {
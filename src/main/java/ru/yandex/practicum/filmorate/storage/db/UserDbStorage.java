@@ -2,12 +2,17 @@ package ru.yandex.practicum.filmorate.storage.db;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
-import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.FriendSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
@@ -15,25 +20,95 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component("userDbStorage")
 @Primary
+@Profile("!in-memory")
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
 
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
 
     @Override
     public List<User> getAll() {
-        String sql = "select * from users";
-        return jdbcTemplate.query(sql, this::mapUser);
+        String sql = "select * from users order by user_id";
+        List<User> users = jdbcTemplate.query(sql, this::mapUser);
+
+        Map<Long, User> usersById = users.stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        loadFriends(usersById, "", new Object[0]);
+
+        return users;
+    }
+
+    @Override
+    public List<User> getPage(long afterId, int limit) {
+        String sql = "select * from users where user_id > ? order by user_id limit ?";
+        List<User> users = jdbcTemplate.query(sql, this::mapUser, afterId, limit);
+
+        addFriends(users);
+        return users;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<User> consumer) {
+        // Пользователи и дружбы читаются двумя курсорами в порядке user_id: два запроса при любом числе
+        // пользователей, в памяти только текущий пользователь
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("select * from users order by user_id");
+                 KeyedCursor friends = KeyedCursor.open(connection,
+                         "select user_id, friend_id, is_confirmed from friendships order by user_id, friend_id",
+                         "user_id", STREAM_FETCH_SIZE)) {
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        User user = mapUser(rs, 0);
+                        friends.forEachRow(user.getId(), row ->
+                                user.getFriends().add(row.getLong("friend_id"), row.getBoolean("is_confirmed")));
+                        consumer.accept(user);
+                    }
+                }
+            }
+            return null;
+        });
     }
 
     @Override
     public User getUserById(Long id) {
         String sql = "select * from users where user_id = ?";
-        return jdbcTemplate.query(sql, this::mapUser, id).stream().findAny()
+        return jdbcTemplate.query(sql, this::mapUserWithFriends, id).stream().findAny()
+                .orElseThrow(() -> new DataNotFoundException("Не удалось найти пользователя с id=" + id));
+    }
+
+    @Override
+    public List<User> getUsersByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        String sql = "select * from users where user_id in (" + placeholders + ")";
+        List<User> users = jdbcTemplate.query(sql, this::mapUser, ids.toArray());
+        addFriends(users);
+
+        Map<Long, User> usersById = users.stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return ids.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long getUserVersion(Long id) {
+        String sql = "select version from users where user_id = ?";
+        return jdbcTemplate.queryForList(sql, Long.class, id).stream().findAny()
                 .orElseThrow(() -> new DataNotFoundException("Не удалось найти пользователя с id=" + id));
     }
 
@@ -58,10 +133,40 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    @Transactional
+    public List<User> createAll(List<User> users) {
+        String sql = "insert into users (email, login, name, birthday) values (?, ?, ?, ?)";
+
+        // Пользователи вставляются одним пакетом, id забираются из сгенерированных ключей в порядке вставки
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql, new String[]{"user_id"})) {
+                for (User user : users) {
+                    ps.setString(1, user.getEmail());
+                    ps.setString(2, user.getLogin());
+                    ps.setString(3, user.getName());
+                    ps.setString(4, String.valueOf(user.getBirthday()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (User user : users) {
+                        keys.next();
+                        user.setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+        return users;
+    }
+
+    @Override
+    @Transactional
     public User update(User user) {
         final long userId = user.getId();
         String sql = "update users " +
-                "set email = ?, login = ?, name = ?, birthday = ? " +
+                "set email = ?, login = ?, name = ?, birthday = ?, version = version + 1 " +
                 "where user_id = ?";
         int rowsUpdated = jdbcTemplate.update(sql,
                 user.getEmail(),
@@ -74,74 +179,215 @@ public class UserDbStorage implements UserStorage {
             throw new DataNotFoundException("Не удалось найти пользователя с id=" + userId);
         }
 
-        Set<Friendship> friendshipsBeforeUpdate = new HashSet<>(getFriendsByUserId(userId));
-        Set<Friendship> newFriendships = user.getFriends();
+        FriendSet friendshipsBeforeUpdate = getFriendsByUserId(userId);
+        FriendSet newFriendships = user.getFriends();
 
 //        Delete
-        Set<Friendship> friendshipsToDelete = new HashSet<>(friendshipsBeforeUpdate);
-        friendshipsToDelete.removeAll(newFriendships);
+        FriendSet friendshipsToDelete = new FriendSet();
+        friendshipsBeforeUpdate.forEach((friendId, isConfirmed) -> {
+            if (!newFriendships.contains(friendId)) {
+                friendshipsToDelete.add(friendId, isConfirmed);
+            }
+        });
         deleteFriendships(userId, friendshipsToDelete);
 
 //        Update
-        Map<Long, Boolean> statusesBeforeUpdate = friendshipsBeforeUpdate.stream()
-                        .collect(Collectors.toMap(Friendship::getFriendId, Friendship::isConfirmed));
-        Set<Friendship> friendshipsToUpdate = newFriendships.stream()
-                .filter(friendshipsBeforeUpdate::contains)
-                .filter(f -> f.isConfirmed() != statusesBeforeUpdate.get(f.getFriendId()))
-                .collect(Collectors.toSet());
+        FriendSet friendshipsToUpdate = new FriendSet();
+        FriendSet friendshipsToAdd = new FriendSet();
+        newFriendships.forEach((friendId, isConfirmed) -> {
+            if (!friendshipsBeforeUpdate.contains(friendId)) {
+                friendshipsToAdd.add(friendId, isConfirmed);
+            } else if (friendshipsBeforeUpdate.isConfirmed(friendId) != isConfirmed) {
+                friendshipsToUpdate.add(friendId, isConfirmed);
+            }
+        });
         updateFriendshipsStatuses(userId, friendshipsToUpdate);
 
 //        Add
-        Set<Friendship> friendshipsToAdd = new HashSet<>(newFriendships);
-        friendshipsToAdd.removeAll(friendshipsBeforeUpdate);
         addFriendships(userId, friendshipsToAdd);
 
+        if (!friendshipsToDelete.isEmpty() || !friendshipsToAdd.isEmpty()) {
+            updateFriendsCount(userId);
+        }
+
         return user;
     }
 
+    @Override
+    public List<User> getFriends(Long userId, Integer limit, int offset) {
+        String sql = "select u.* " +
+                "from friendships as f " +
+                "join users as u on u.user_id = f.friend_id " +
+                "where f.user_id = ? " +
+                "order by f.friend_id " +
+                "limit ? offset ?";
+        List<User> friends = jdbcTemplate.query(sql, this::mapUser, userId,
+                limit == null ? Integer.MAX_VALUE : limit, offset);
+
+        if (friends.isEmpty()) {
+            checkUsersExist(userId);
+        }
+        return friends;
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long userId, Long otherId) {
+        // Поиск по первичному ключу friendships (user_id, friend_id) для обоих пользователей
+        String sql = "select u.* " +
+                "from friendships as f1 " +
+                "join friendships as f2 on f2.user_id = ? and f2.friend_id = f1.friend_id " +
+                "join users as u on u.user_id = f1.friend_id " +
+                "where f1.user_id = ? " +
+                "order by u.user_id";
+        List<User> commonFriends = jdbcTemplate.query(sql, this::mapUser, otherId, userId);
+
+        if (commonFriends.isEmpty()) {
+            checkUsersExist(userId, otherId);
+        }
+        return commonFriends;
+    }
+
+    @Override
+    @Transactional
+    public void addFriendship(Long userId, Long friendId) {
+        String sql = "insert into friendships (user_id, friend_id, is_confirmed) " +
+                "select ?, ?, false where not exists (select 1 from friendships where user_id = ? and friend_id = ?)";
+        int rowsInserted;
+        try {
+            rowsInserted = jdbcTemplate.update(sql, userId, friendId, userId, friendId);
+        } catch (DuplicateKeyException e) {
+            return; // Дружба уже добавлена параллельным запросом
+        } catch (DataIntegrityViolationException e) {
+            checkUsersExist(userId, friendId);
+            throw e;
+        }
+
+        if (rowsInserted > 0) {
+            changeFriendsCount(userId, 1);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void removeFriendship(Long userId, Long friendId) {
+        String sql = "delete from friendships where user_id = ? and friend_id = ?";
+        if (jdbcTemplate.update(sql, userId, friendId) == 0) {
+            checkUsersExist(userId, friendId);
+            return;
+        }
+        changeFriendsCount(userId, -1);
+    }
+
+    @Override
+    @Transactional
+    public void confirmFriendship(Long userId, Long friendId) {
+        String sql = "update friendships set is_confirmed = true where user_id = ? and friend_id = ?";
+        if (jdbcTemplate.update(sql, userId, friendId) == 0) {
+            checkUsersExist(userId, friendId);
+            throw new DataNotFoundException(String.format("Пользователь с id=%s не добавлял в друзья пользователя " +
+                    "с id=%s.", userId, friendId));
+        }
+        incrementVersion(userId);
+    }
+
+    private void incrementVersion(Long userId) {
+        jdbcTemplate.update("update users set version = version + 1 where user_id = ?", userId);
+    }
+
+    private void changeFriendsCount(Long userId, int delta) {
+        jdbcTemplate.update("update users set friends_count = friends_count + ?, version = version + 1 " +
+                "where user_id = ?", delta, userId);
+    }
+
+    // Счетчик друзей хранится в users, чтобы число друзей не считалось по friendships при каждом чтении
+    private void updateFriendsCount(Long userId) {
+        String sql = "update users set friends_count = (select count(*) from friendships where user_id = ?) " +
+                "where user_id = ?";
+        jdbcTemplate.update(sql, userId, userId);
+    }
+
+    // Один запрос на все id, чтобы ответ с ошибкой не выходил за бюджет запросов эндпоинта
+    private void checkUsersExist(Long... ids) {
+        String placeholders = String.join(", ", Collections.nCopies(ids.length, "?"));
+        String sql = "select user_id from users where user_id in (" + placeholders + ")";
+        Set<Long> existingIds = new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, (Object[]) ids));
+        for (Long id : ids) {
+            if (!existingIds.contains(id)) {
+                throw new DataNotFoundException("Не удалось найти пользователя с id=" + id);
+            }
+        }
+    }
+
     private User mapUser(ResultSet rs, int rowNum) throws SQLException {
-        User user = User.builder()
+        return User.builder()
                 .id(rs.getLong("user_id"))
                 .email(rs.getString("email"))
                 .login(rs.getString("login"))
                 .name(rs.getString("name"))
                 .birthday(rs.getDate("birthday").toLocalDate())
+                .version(rs.getLong("version"))
                 .build();
+    }
 
-        user.getFriends().addAll(getFriendsByUserId(user.getId()));
+    private User mapUserWithFriends(ResultSet rs, int rowNum) throws SQLException {
+        User user = mapUser(rs, rowNum);
+        user.setFriends(getFriendsByUserId(user.getId()));
         return user;
     }
 
-    private Friendship mapFriendship(ResultSet rs, int rowNum) throws SQLException {
-        return Friendship.builder()
-                .friendId(rs.getLong("friend_id"))
-                .isConfirmed(rs.getBoolean("is_confirmed"))
-                .build();
+    private void addFriends(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        Map<Long, User> usersById = users.stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        String placeholders = String.join(", ", Collections.nCopies(users.size(), "?"));
+        loadFriends(usersById, "where user_id in (" + placeholders + ")", usersById.keySet().toArray());
     }
 
-    private List<Friendship> getFriendsByUserId(Long userId) {
-        String sql = "select friend_id, is_confirmed from friendships where user_id = ?";
-        return jdbcTemplate.query(sql, this::mapFriendship, userId);
+    // Друзья подгружаются одним запросом на весь набор пользователей
+    private void loadFriends(Map<Long, User> usersById, String condition, Object[] args) {
+        String sql = "select user_id, friend_id, is_confirmed from friendships " + condition + " order by friend_id";
+        jdbcTemplate.query(sql, rs -> {
+            User user = usersById.get(rs.getLong("user_id"));
+            if (user != null) {
+                user.getFriends().add(rs.getLong("friend_id"), rs.getBoolean("is_confirmed"));
+            }
+        }, args);
     }
 
-    private void addFriendships(Long userId, Set<Friendship> friendships) {
-        String sql = "insert into friendships (user_id, friend_id, is_confirmed) values (?, ?, ?)";
-        for (Friendship friendship : friendships) {
-            jdbcTemplate.update(sql, userId, friendship.getFriendId(), friendship.isConfirmed());
-        }
+    private FriendSet getFriendsByUserId(Long userId) {
+        String sql = "select friend_id, is_confirmed from friendships where user_id = ? order by friend_id";
+        FriendSet friends = new FriendSet();
+        jdbcTemplate.query(sql, rs -> {
+            friends.add(rs.getLong("friend_id"), rs.getBoolean("is_confirmed"));
+        }, userId);
+        return friends;
     }
 
-    private void deleteFriendships(Long userId, Set<Friendship> friendships) {
-        String sql = "delete from friendships where user_id = ? and friend_id = ?";
-        for (Friendship friendship : friendships) {
-            jdbcTemplate.update(sql, userId, friendship.getFriendId());
-        }
+    // Изменения дружб отправляются одним пакетом, а не запросом на каждую строку
+    private void addFriendships(Long userId, FriendSet friendships) {
+        List<Object[]> args = new ArrayList<>();
+        friendships.forEach((friendId, isConfirmed) -> args.add(new Object[]{userId, friendId, isConfirmed}));
+        batchUpdate("insert into friendships (user_id, friend_id, is_confirmed) values (?, ?, ?)", args);
+    }
+
+    private void deleteFriendships(Long userId, FriendSet friendships) {
+        List<Object[]> args = new ArrayList<>();
+        friendships.forEach((friendId, isConfirmed) -> args.add(new Object[]{userId, friendId}));
+        batchUpdate("delete from friendships where user_id = ? and friend_id = ?", args);
+    }
+
+    private void updateFriendshipsStatuses(Long userId, FriendSet friendships) {
+        List<Object[]> args = new ArrayList<>();
+        friendships.forEach((friendId, isConfirmed) -> args.add(new Object[]{isConfirmed, userId, friendId}));
+        batchUpdate("update friendships set is_confirmed = ? where user_id = ? and friend_id = ?", args);
     }
 
-    private void updateFriendshipsStatuses(Long userId, Set<Friendship> friendships) {
-        String sql = "update friendships set is_confirmed = ? where user_id ? and friend_id = ?";
-        for (Friendship friendship : friendships) {
-            jdbcTemplate.update(sql, friendship.isConfirmed(), userId, friendship.getFriendId());
+    private void batchUpdate(String sql, List<Object[]> args) {
+        if (!args.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, args);
         }
     }
 }
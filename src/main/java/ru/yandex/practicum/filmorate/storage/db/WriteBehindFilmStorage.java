@@ -0,0 +1,410 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.model.LikesCount;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Отложенная запись лайков поверх {@link FilmDbStorage}, включается свойством
+ * {@code filmorate.likes.write-behind.enabled=true}.
+ * <p>
+ * Принятые лайки и их отмены копятся в памяти, по одной записи на пару (фильм, пользователь): лайк и его отмена
+ * до записи в БД взаимно уничтожаются. В буфере хранится только отличие от БД, поэтому при записи лайки
+ * вставляются и удаляются без проверок, а счетчики лайков меняются на накопленную разницу. Запись идет пакетами
+ * одной транзакцией по таймеру или при накоплении {@code batch-size} изменений. Если буфер заполнен до
+ * {@code capacity}, запрос сам записывает буфер в БД, прежде чем добавить свое изменение.
+ * <p>
+ * Чтение накладывает буфер на результат из БД. Чтение и прием лайков идут под read-блокировкой,
+ * запись буфера в БД — под write-блокировкой, поэтому чтение не видит состояния между записью и очисткой буфера.
+ * При остановке приложения буфер записывается полностью.
+ * <p>
+ * Чтобы понять, меняет ли изменение состояние лайка, хранилище держит в памяти лайки и версию из БД для фильмов,
+ * которые уже лайкали, и id проверенных пользователей. Первый лайк фильма загружает его лайки одним запросом,
+ * первый лайк пользователя проверяет его существование, остальные лайки к БД не обращаются. Пользователи
+ * не удаляются, поэтому проверенный id остается верным; загруженное состояние обновляется при записи буфера
+ * и сбрасывается при обновлении фильма. Память под загруженные лайки — 8 байт на лайк, как у {@code FilmLikesIndex}.
+ * <p>
+ * Изменения одной пары (фильм, пользователь) принимаются под блокировкой полосы пары, поэтому версии, которые
+ * возвращают {@link #addLike} и {@link #removeLike}, идут в порядке изменений пары.
+ */
+@Slf4j
+@Component
+@Primary
+@Profile("!in-memory")
+@ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+public class WriteBehindFilmStorage implements FilmStorage {
+
+    private static final int PAIR_LOCK_STRIPES = 64;
+
+    private final FilmDbStorage filmDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int capacity;
+
+    // id фильма -> id пользователя -> true, если лайк нужно поставить, false — если снять
+    private final ConcurrentMap<Long, ConcurrentMap<Long, Boolean>> pending = new ConcurrentHashMap<>();
+    // id фильма -> число принятых изменений лайков, на которое версия фильма в БД отстает от видимой
+    private final ConcurrentMap<Long, AtomicLong> pendingVersions = new ConcurrentHashMap<>();
+    // id фильма -> лайки и версия этого фильма в БД. Меняются только под write-блокировкой,
+    // читаются под read-блокировкой
+    private final ConcurrentMap<Long, Persisted> persisted = new ConcurrentHashMap<>();
+    private final ReentrantLock[] pairLocks = IntStream.range(0, PAIR_LOCK_STRIPES)
+            .mapToObj(i -> new ReentrantLock())
+            .toArray(ReentrantLock[]::new);
+    private final Set<Long> knownUserIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "likes-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WriteBehindFilmStorage(FilmDbStorage filmDbStorage,
+                                  JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                                  @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                                  @Value("${filmorate.likes.write-behind.flush-interval-ms:100}")
+                                  long flushIntervalMs) {
+        this.filmDbStorage = filmDbStorage;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<Film> getAll() {
+        return withReadLock(() -> withPending(filmDbStorage.getAll()));
+    }
+
+    @Override
+    public List<Film> getPage(long afterId, int limit) {
+        return withReadLock(() -> withPending(filmDbStorage.getPage(afterId, limit)));
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        // Выгрузка может идти минутами, поэтому она не держит блокировку, а видит все лайки, принятые до ее начала
+        flush();
+        filmDbStorage.streamAll(consumer);
+    }
+
+    @Override
+    public Film create(Film film) {
+        return filmDbStorage.create(film);
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return filmDbStorage.createAll(films);
+    }
+
+    @Override
+    public Film update(Film film) {
+        // Обновление сравнивает лайки фильма с БД, поэтому буфер сначала записывается
+        lock.writeLock().lock();
+        try {
+            writePending();
+            Film updated = filmDbStorage.update(film);
+            persisted.remove(updated.getId());
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Film getFilmById(Long id) {
+        return withReadLock(() -> withPending(filmDbStorage.getFilmById(id)));
+    }
+
+    @Override
+    public long getFilmVersion(Long id) {
+        return withReadLock(() -> filmDbStorage.getFilmVersion(id) + pendingVersion(id));
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        return withReadLock(() -> withPending(filmDbStorage.getFilmsByIds(ids)));
+    }
+
+    @Override
+    public Map<Long, LikesCount> getLikesCounts() {
+        // Под write-блокировкой лайки не принимаются, поэтому число лайков и версия из буфера согласованы
+        lock.writeLock().lock();
+        try {
+            Map<Long, LikesCount> counts = filmDbStorage.getLikesCounts();
+            Map<Long, Integer> deltas = new HashMap<>();
+            pending.forEach((filmId, filmPending) -> filmPending.forEach((userId, liked) ->
+                    deltas.merge(filmId, liked ? 1 : -1, Integer::sum)));
+            counts.replaceAll((filmId, count) -> LikesCount.builder()
+                    .likes(count.getLikes() + deltas.getOrDefault(filmId, 0))
+                    .version(count.getVersion() + pendingVersion(filmId))
+                    .build());
+            return counts;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Отложенные лайки не меняют даты релиза и жанры
+    @Override
+    public List<Film> getReleaseDatesAndGenres() {
+        return filmDbStorage.getReleaseDatesAndGenres();
+    }
+
+    @Override
+    public long addLike(Long filmId, Long userId) {
+        return enqueue(filmId, userId, true);
+    }
+
+    @Override
+    public long removeLike(Long filmId, Long userId) {
+        long version = enqueue(filmId, userId, false);
+        if (version == 0) {
+            throw new DataNotFoundException(String.format("Пользователь с id=%s не ставил лайк фильму с id=%s.",
+                    userId, filmId));
+        }
+        return version;
+    }
+
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            writePending();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+        log.info("Буфер лайков записан в БД при остановке.");
+    }
+
+    // Возвращает версию фильма после изменения или 0, если изменение не меняет состояние лайка с учетом буфера
+    private long enqueue(Long filmId, Long userId, boolean liked) {
+        if (pendingCount.get() >= capacity) {
+            flush();
+        }
+
+        long version = withReadLock(() -> {
+            // Под блокировкой чтения лайки в БД не меняются: буфер записывается под блокировкой записи
+            Persisted filmPersisted = getPersisted(filmId);
+            checkUser(userId);
+            ConcurrentMap<Long, Boolean> filmPending = pending.computeIfAbsent(filmId, id -> new ConcurrentHashMap<>());
+            ReentrantLock pairLock = pairLocks[(Long.hashCode(filmId) * 31 + Long.hashCode(userId)
+                    & Integer.MAX_VALUE) % PAIR_LOCK_STRIPES];
+            pairLock.lock();
+            try {
+                Boolean old = filmPending.get(userId);
+                boolean current = old != null ? old : filmPersisted.likes.contains(userId);
+                if (current == liked) {
+                    return 0L;
+                }
+                if (old != null) {
+                    filmPending.remove(userId);
+                    pendingCount.decrementAndGet();
+                } else {
+                    filmPending.put(userId, liked);
+                    pendingCount.incrementAndGet();
+                }
+                // Версия растет после изменения буфера: читатель может увидеть новый лайк со старой версией,
+                // но не новую версию со старыми лайками
+                return filmPersisted.version
+                        + pendingVersions.computeIfAbsent(filmId, id -> new AtomicLong()).incrementAndGet();
+            } finally {
+                pairLock.unlock();
+            }
+        });
+
+        if (pendingCount.get() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false); // Приложение останавливается, буфер запишет shutdown()
+            }
+        }
+        return version;
+    }
+
+    // Запрос к БД идет вне computeIfAbsent, чтобы не держать блокировку корзины карты на время запроса.
+    // Параллельные загрузки под read-блокировкой видят одно и то же состояние, поэтому сохраняется любая из них
+    private Persisted getPersisted(Long filmId) {
+        Persisted filmPersisted = persisted.get(filmId);
+        if (filmPersisted != null) {
+            return filmPersisted;
+        }
+        String sql = "select f.version, l.user_id from films f left join likes l on l.film_id = f.film_id " +
+                "where f.film_id = ? order by l.user_id";
+        Persisted loaded = new Persisted();
+        boolean[] found = new boolean[1];
+        jdbcTemplate.query(sql, rs -> {
+            found[0] = true;
+            loaded.version = rs.getLong("version");
+            long userId = rs.getLong("user_id");
+            if (!rs.wasNull()) {
+                loaded.likes.add(userId);
+            }
+        }, filmId);
+        if (!found[0]) {
+            throw new DataNotFoundException("Не удалось найти фильм с id=" + filmId);
+        }
+        Persisted raced = persisted.putIfAbsent(filmId, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    private void checkUser(Long userId) {
+        if (knownUserIds.contains(userId)) {
+            return;
+        }
+        Integer count = jdbcTemplate.queryForObject("select count(*) from users where user_id = ?",
+                Integer.class, userId);
+        if (count == null || count == 0) {
+            throw new DataNotFoundException("Не удалось найти пользователя с id=" + userId);
+        }
+        knownUserIds.add(userId);
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Не удалось записать буфер лайков в БД, повтор при следующей записи.", e);
+        }
+    }
+
+    // Вызывается под write-блокировкой. При ошибке буфер не очищается и записывается повторно
+    private void writePending() {
+        if (pendingCount.get() == 0 && pendingVersions.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> likesToAdd = new ArrayList<>();
+        List<Object[]> likesToDelete = new ArrayList<>();
+        Map<Long, Integer> likesCountDeltas = new HashMap<>();
+        pending.forEach((filmId, filmPending) -> filmPending.forEach((userId, liked) -> {
+            (liked ? likesToAdd : likesToDelete).add(new Object[]{filmId, userId});
+            likesCountDeltas.merge(filmId, liked ? 1 : -1, Integer::sum);
+        }));
+
+        // Версия в БД растет на число принятых изменений, чтобы совпасть с версией, которую уже видели клиенты
+        List<Object[]> countUpdates = new ArrayList<>();
+        pendingVersions.forEach((filmId, changes) ->
+                countUpdates.add(new Object[]{likesCountDeltas.getOrDefault(filmId, 0), changes.get(), filmId}));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("insert into likes (film_id, user_id) values (?, ?)", likesToAdd);
+            jdbcTemplate.batchUpdate("delete from likes where film_id = ? and user_id = ?", likesToDelete);
+            jdbcTemplate.batchUpdate("update films set likes_count = likes_count + ?, version = version + ? " +
+                    "where film_id = ?", countUpdates);
+        });
+
+        // Лайки фильма загружены при приеме первого изменения и сбрасываются только под этой же блокировкой
+        pending.forEach((filmId, filmPending) -> {
+            Persisted filmPersisted = persisted.get(filmId);
+            if (filmPersisted == null) {
+                return;
+            }
+            filmPending.forEach((userId, liked) -> {
+                if (liked) {
+                    filmPersisted.likes.add(userId);
+                } else {
+                    filmPersisted.likes.remove(userId);
+                }
+            });
+        });
+        pendingVersions.forEach((filmId, changes) -> {
+            Persisted filmPersisted = persisted.get(filmId);
+            if (filmPersisted != null) {
+                filmPersisted.version += changes.get();
+            }
+        });
+        pending.clear();
+        pendingVersions.clear();
+        pendingCount.set(0);
+        log.debug("Записано в БД {} лайков и {} отмен лайков.", likesToAdd.size(), likesToDelete.size());
+    }
+
+    private List<Film> withPending(List<Film> films) {
+        films.forEach(this::withPending);
+        return films;
+    }
+
+    private long pendingVersion(Long filmId) {
+        AtomicLong changes = pendingVersions.get(filmId);
+        return changes == null ? 0 : changes.get();
+    }
+
+    // Версия читается раньше лайков, в обратном порядке к enqueue()
+    private Film withPending(Film film) {
+        film.setVersion(film.getVersion() + pendingVersion(film.getId()));
+        Map<Long, Boolean> filmPending = pending.get(film.getId());
+        if (filmPending != null) {
+            filmPending.forEach((userId, liked) -> {
+                if (liked) {
+                    film.getLikes().add(userId);
+                } else {
+                    film.getLikes().remove(userId);
+                }
+            });
+        }
+        return film;
+    }
+
+    private <T> T withReadLock(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static class Persisted {
+        final IdSet likes = new IdSet();
+        long version;
+    }
+}
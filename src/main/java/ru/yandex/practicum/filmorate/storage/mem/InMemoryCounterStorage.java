@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.storage.mem;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CounterDrift;
+import ru.yandex.practicum.filmorate.storage.CounterStorage;
+
+import java.util.List;
+
+/**
+ * В памяти число лайков и друзей берется из размеров множеств, отдельных счетчиков нет и расходиться нечему.
+ */
+@Component
+@Profile("in-memory")
+public class InMemoryCounterStorage implements CounterStorage {
+
+    private static final CounterDrift NO_DRIFT = CounterDrift.builder()
+            .filmIds(List.of())
+            .userIds(List.of())
+            .build();
+
+    @Override
+    public CounterDrift checkDrift() {
+        return NO_DRIFT;
+    }
+
+    @Override
+    public CounterDrift backfill() {
+        return NO_DRIFT;
+    }
+}
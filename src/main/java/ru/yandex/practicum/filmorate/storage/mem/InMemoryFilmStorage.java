@@ -1,47 +1,234 @@
 package ru.yandex.practicum.filmorate.storage.mem;
 
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.model.LikesCount;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-@Deprecated
+/**
+ * Потокобезопасное хранилище фильмов в памяти, включается профилем {@code in-memory}.
+ * Наружу отдаются только копии фильмов, поэтому внутреннее состояние меняется лишь через методы хранилища.
+ * Жанры и рейтинг неизменяемы и не копируются.
+ * Лайки фильма хранятся в {@link IdSet}, доступ к которому синхронизируется на самом множестве.
+ */
+@Component("inMemoryFilmStorage")
+@Profile("in-memory")
+@RequiredArgsConstructor
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Long, Film> films = new HashMap<>();
-    private long idCounter;
+
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final UserStorage userStorage;
+
+    private final ConcurrentNavigableMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<Long, IdSet> likes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final AtomicLong idCounter = new AtomicLong();
 
     @Override
     public List<Film> getAll() {
-        return new ArrayList<>(films.values());
+        return films.values().stream()
+                .map(this::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getPage(long afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(this::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        films.values().forEach(film -> consumer.accept(copyOf(film)));
     }
 
     @Override
     public Film create(Film film) {
-        film.setId(++idCounter);
-        films.put(film.getId(), film);
+        film.setId(idCounter.incrementAndGet());
+        // Жанры и рейтинг проверяются до регистрации фильма, чтобы ошибка не оставила лайков и версии без фильма
+        Film stored = toStored(film);
+        likes.put(film.getId(), new IdSet());
+        versions.put(film.getId(), new AtomicLong());
+        films.put(film.getId(), stored);
         return film;
     }
 
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        films.forEach(this::create);
+        return films;
+    }
+
     @Override
     public Film update(Film film) {
         final Long id = film.getId();
-        if (!films.containsKey(id)) {
-            throw new DataNotFoundException(String.format("Не удалось найти фильм с id=%s.", id));
+        Film stored = toStored(film);
+        if (films.replace(id, stored) == null) {
+            throw new DataNotFoundException("Не удалось найти фильм с id=" + id);
+        }
+
+        IdSet filmLikes = likes.get(id);
+        synchronized (filmLikes) {
+            filmLikes.clear();
+            filmLikes.addAll(film.getLikes());
+            film.setVersion(versions.get(id).incrementAndGet());
         }
-        films.put(id, film);
+
+        film.setGenres(new TreeSet<>(stored.getGenres()));
         return film;
     }
 
     @Override
     public Film getFilmById(Long id) {
-        if (films.containsKey(id)) {
-            return films.get(id);
-        } else {
-            throw new DataNotFoundException(String.format("Не удалось найти фильм с id=%s.", id));
+        // Версия растет после изменения фильма, поэтому читается раньше него: копия может получить новые данные
+        // со старой версией, но не старые данные с новой версией
+        long version = versionOf(id);
+        Film film = films.get(id);
+        if (film == null) {
+            throw new DataNotFoundException("Не удалось найти фильм с id=" + id);
+        }
+        return copyOf(film, version);
+    }
+
+    @Override
+    public long getFilmVersion(Long id) {
+        if (!versions.containsKey(id)) {
+            throw new DataNotFoundException("Не удалось найти фильм с id=" + id);
+        }
+        return versionOf(id);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(this::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<Long, LikesCount> getLikesCounts() {
+        return films.keySet().stream()
+                .collect(Collectors.toMap(id -> id, this::likesCount));
+    }
+
+    @Override
+    public List<Film> getReleaseDatesAndGenres() {
+        return films.values().stream()
+                .map(film -> Film.builder()
+                        .id(film.getId())
+                        .releaseDate(film.getReleaseDate())
+                        .genres(new TreeSet<>(film.getGenres()))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long addLike(Long filmId, Long userId) {
+        IdSet filmLikes = getLikes(filmId);
+        userStorage.getUserById(userId);
+        // Версия растет под той же блокировкой, что и лайки, чтобы версии изменений одной пары шли в их порядке
+        synchronized (filmLikes) {
+            return filmLikes.add(userId) ? versions.get(filmId).incrementAndGet() : 0;
+        }
+    }
+
+    @Override
+    public long removeLike(Long filmId, Long userId) {
+        IdSet filmLikes = getLikes(filmId);
+        userStorage.getUserById(userId);
+        synchronized (filmLikes) {
+            if (filmLikes.remove(userId)) {
+                return versions.get(filmId).incrementAndGet();
+            }
+        }
+        throw new DataNotFoundException(String.format("Пользователь с id=%s не ставил лайк фильму с id=%s.",
+                userId, filmId));
+    }
+
+    private IdSet getLikes(Long filmId) {
+        IdSet filmLikes = likes.get(filmId);
+        if (filmLikes == null) {
+            throw new DataNotFoundException("Не удалось найти фильм с id=" + filmId);
+        }
+        return filmLikes;
+    }
+
+    // Хранимая копия содержит названия рейтинга и жанров из справочников и не содержит лайков
+    private Film toStored(Film film) {
+        return Film.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(mpaStorage.getMpaById(film.getMpa().getId()))
+                .genres(film.getGenres().stream()
+                        .map(genre -> genreStorage.getGenreById(genre.getId()))
+                        .collect(Collectors.toCollection(TreeSet::new)))
+                .build();
+    }
+
+    private Film copyOf(Film stored) {
+        return copyOf(stored, versionOf(stored.getId()));
+    }
+
+    private Film copyOf(Film stored, long version) {
+        Film film = Film.builder()
+                .id(stored.getId())
+                .name(stored.getName())
+                .description(stored.getDescription())
+                .releaseDate(stored.getReleaseDate())
+                .duration(stored.getDuration())
+                .mpa(stored.getMpa())
+                .genres(new TreeSet<>(stored.getGenres()))
+                .version(version)
+                .build();
+        IdSet filmLikes = likes.get(stored.getId());
+        if (filmLikes != null) {
+            synchronized (filmLikes) {
+                film.setLikes(filmLikes.copy());
+            }
+        }
+        return film;
+    }
+
+    private long versionOf(Long filmId) {
+        AtomicLong version = versions.get(filmId);
+        return version == null ? 0 : version.get();
+    }
+
+    // Версия меняется вместе с лайками под блокировкой множества, поэтому число и версия согласованы
+    private LikesCount likesCount(Long filmId) {
+        IdSet filmLikes = likes.get(filmId);
+        synchronized (filmLikes) {
+            return LikesCount.builder()
+                    .likes(filmLikes.size())
+                    .version(versionOf(filmId))
+                    .build();
         }
     }
 }
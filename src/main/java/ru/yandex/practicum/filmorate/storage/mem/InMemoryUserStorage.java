@@ -1,48 +1,271 @@
 package ru.yandex.practicum.filmorate.storage.mem;
 
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
+import ru.yandex.practicum.filmorate.model.FriendSet;
+import ru.yandex.practicum.filmorate.model.IdSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-@Deprecated
+/**
+ * Потокобезопасное хранилище пользователей в памяти, включается профилем {@code in-memory}.
+ * Дружбы хранятся отдельно от пользователей в {@link FriendSet}, доступ к которому синхронизируется на самом
+ * множестве; под блокировкой снимаются только копии, поэтому две блокировки одновременно не берутся.
+ * Email уникален, как в схеме БД: занятый email отклоняется тем же {@link DuplicateKeyException}, что и в БД.
+ */
+@Component("inMemoryUserStorage")
+@Profile("in-memory")
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Long, User> users = new HashMap<>();
-    private long idCounter;
+
+    private final ConcurrentNavigableMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<Long, FriendSet> friendships = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> emails = new ConcurrentHashMap<>();
+    private final AtomicLong idCounter = new AtomicLong();
 
     @Override
     public List<User> getAll() {
-        return new ArrayList<>(users.values());
+        return users.values().stream()
+                .map(this::copyWithFriends)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> getPage(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(this::copyWithFriends)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        users.values().forEach(user -> consumer.accept(copyWithFriends(user)));
     }
 
     @Override
     public User create(User user) {
-        user.setId(++idCounter);
-        users.put(user.getId(), user);
+        long id = idCounter.incrementAndGet();
+        reserveEmail(user.getEmail(), id);
+        store(user, id);
         return user;
     }
 
+    // Как и пакетная вставка в БД, загрузка с занятым email не создает ни одного пользователя
+    @Override
+    public List<User> createAll(List<User> users) {
+        List<Long> ids = new ArrayList<>(users.size());
+        try {
+            for (User user : users) {
+                long id = idCounter.incrementAndGet();
+                reserveEmail(user.getEmail(), id);
+                ids.add(id);
+            }
+        } catch (DataIntegrityViolationException e) {
+            for (int i = 0; i < ids.size(); i++) {
+                emails.remove(users.get(i).getEmail(), ids.get(i));
+            }
+            throw e;
+        }
+        for (int i = 0; i < users.size(); i++) {
+            store(users.get(i), ids.get(i));
+        }
+        return users;
+    }
+
     @Override
     public User update(User user) {
         final Long id = user.getId();
-        if (!users.containsKey(id)) {
-            throw new DataNotFoundException(String.format("Не удалось найти пользователя с id=%s.", id));
+        User updated = copyOf(user);
+        users.compute(id, (key, stored) -> {
+            if (stored == null) {
+                throw new DataNotFoundException("Не удалось найти пользователя с id=" + id);
+            }
+            if (!stored.getEmail().equals(updated.getEmail())) {
+                reserveEmail(updated.getEmail(), id);
+                emails.remove(stored.getEmail(), id);
+            }
+            return updated;
+        });
+
+        FriendSet newFriends = user.getFriends().copy();
+        FriendSet friends = friendships.get(id);
+        synchronized (friends) {
+            friends.clear();
+            newFriends.forEach(friends::add);
         }
-        users.put(id, user);
+        versions.get(id).incrementAndGet();
+
         return user;
     }
 
     @Override
     public User getUserById(Long id) {
-        if (users.containsKey(id)) {
-            return users.get(id);
-        } else {
-            throw new DataNotFoundException(String.format("Не удалось найти пользователя с id=%s.", id));
+        // Версия растет после изменения пользователя, поэтому читается раньше него: копия может получить
+        // новые данные со старой версией, но не старые данные с новой версией
+        long version = versionOf(id);
+        return copyWithFriends(getStoredUser(id), version);
+    }
+
+    @Override
+    public List<User> getUsersByIds(List<Long> ids) {
+        return ids.stream()
+                .filter(users::containsKey)
+                .map(this::getUserById)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long getUserVersion(Long id) {
+        getStoredUser(id);
+        return versionOf(id);
+    }
+
+    @Override
+    public List<User> getFriends(Long userId, Integer limit, int offset) {
+        return snapshotFriendIds(userId).stream()
+                .skip(offset)
+                .limit(limit == null ? Long.MAX_VALUE : limit)
+                .mapToObj(users::get)
+                .filter(Objects::nonNull)
+                .map(this::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long userId, Long otherId) {
+        IdSet friendsOfOtherUser = snapshotFriendIds(otherId);
+        return snapshotFriendIds(userId).intersect(friendsOfOtherUser).stream()
+                .mapToObj(users::get)
+                .filter(Objects::nonNull)
+                .map(this::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void addFriendship(Long userId, Long friendId) {
+        FriendSet friends = getFriendSet(userId);
+        getStoredUser(friendId);
+        boolean added;
+        synchronized (friends) {
+            added = friends.add(friendId, false);
+        }
+        if (added) {
+            versions.get(userId).incrementAndGet();
         }
     }
 
+    @Override
+    public void removeFriendship(Long userId, Long friendId) {
+        FriendSet friends = getFriendSet(userId);
+        getStoredUser(friendId);
+        boolean removed;
+        synchronized (friends) {
+            removed = friends.remove(friendId);
+        }
+        if (removed) {
+            versions.get(userId).incrementAndGet();
+        }
+    }
+
+    @Override
+    public void confirmFriendship(Long userId, Long friendId) {
+        FriendSet friends = getFriendSet(userId);
+        getStoredUser(friendId);
+        boolean confirmed;
+        synchronized (friends) {
+            confirmed = friends.setConfirmed(friendId, true);
+        }
+        if (!confirmed) {
+            throw new DataNotFoundException(String.format("Пользователь с id=%s не добавлял в друзья пользователя " +
+                    "с id=%s.", userId, friendId));
+        }
+        versions.get(userId).incrementAndGet();
+    }
+
+    // Повторный вызов с тем же id не ошибка: ConcurrentSkipListMap.compute может применить функцию повторно
+    private void reserveEmail(String email, long userId) {
+        if (email == null) {
+            throw new DataIntegrityViolationException("У пользователя не указан email.");
+        }
+        Long owner = emails.putIfAbsent(email, userId);
+        if (owner != null && owner != userId) {
+            throw new DuplicateKeyException("Пользователь с email=" + email + " уже существует.");
+        }
+    }
+
+    private void store(User user, long id) {
+        user.setId(id);
+        friendships.put(id, new FriendSet());
+        versions.put(id, new AtomicLong());
+        users.put(id, copyOf(user));
+    }
+
+    private User getStoredUser(Long id) {
+        User user = users.get(id);
+        if (user == null) {
+            throw new DataNotFoundException("Не удалось найти пользователя с id=" + id);
+        }
+        return user;
+    }
+
+    private FriendSet getFriendSet(Long userId) {
+        FriendSet friends = friendships.get(userId);
+        if (friends == null) {
+            throw new DataNotFoundException("Не удалось найти пользователя с id=" + userId);
+        }
+        return friends;
+    }
+
+    private IdSet snapshotFriendIds(Long userId) {
+        FriendSet friends = getFriendSet(userId);
+        synchronized (friends) {
+            return friends.friendIds();
+        }
+    }
+
+    private User copyOf(User user) {
+        return User.builder()
+                .id(user.getId())
+                .email(user.getEmail())
+                .login(user.getLogin())
+                .name(user.getName())
+                .birthday(user.getBirthday())
+                .build();
+    }
+
+    private User copyWithFriends(User stored) {
+        return copyWithFriends(stored, versionOf(stored.getId()));
+    }
+
+    private User copyWithFriends(User stored, long version) {
+        User user = copyOf(stored);
+        user.setVersion(version);
+        FriendSet friends = friendships.get(stored.getId());
+        if (friends != null) {
+            synchronized (friends) {
+                user.setFriends(friends.copy());
+            }
+        }
+        return user;
+    }
+
+    private long versionOf(Long userId) {
+        AtomicLong version = versions.get(userId);
+        return version == null ? 0 : version.get();
+    }
 }
@@ -16,7 +16,9 @@ CREATE TABLE IF NOT EXISTS films (
     description varchar(200) NOT NULL,
     release_date DATE NOT NULL,
     duration INTEGER NOT NULL,
-    mpa_id INTEGER NOT NULL REFERENCES mpa_rating(mpa_id)
+    mpa_id INTEGER NOT NULL REFERENCES mpa_rating(mpa_id),
+    likes_count INTEGER NOT NULL DEFAULT 0,
+    version BIGINT NOT NULL DEFAULT 0
 );
 
 CREATE TABLE IF NOT EXISTS film_genre (
@@ -25,12 +27,17 @@ CREATE TABLE IF NOT EXISTS film_genre (
     PRIMARY KEY(genre_id, film_id)
 );
 
+-- Жанры фильма читаются по film_id, а первичный ключ начинается с genre_id
+CREATE INDEX IF NOT EXISTS film_genre_film_id_idx ON film_genre (film_id, genre_id);
+
 CREATE TABLE IF NOT EXISTS users (
     user_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     email varchar(100) NOT NULL UNIQUE,
     login varchar(50) NOT NULL,
     name varchar(50) NOT NULL,
-    birthday DATE
+    birthday DATE,
+    friends_count INTEGER NOT NULL DEFAULT 0,
+    version BIGINT NOT NULL DEFAULT 0
 );
 
 CREATE TABLE IF NOT EXISTS friendships (
@@ -40,8 +47,14 @@ CREATE TABLE IF NOT EXISTS friendships (
     PRIMARY KEY(user_id, friend_id)
 );
 
+-- Кто добавил пользователя в друзья
+CREATE INDEX IF NOT EXISTS friendships_friend_id_idx ON friendships (friend_id, user_id);
+
 CREATE TABLE IF NOT EXISTS likes (
     film_id BIGINT REFERENCES films(film_id),
     user_id BIGINT REFERENCES users(user_id),
     PRIMARY KEY(film_id, user_id)
-);
\ No newline at end of file
+);
+
+-- Фильмы, которые лайкнул пользователь
+CREATE INDEX IF NOT EXISTS likes_user_id_idx ON likes (user_id, film_id);
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IdSet;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EntityCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsedAndCountsStats() {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 2);
+
+        cache.get(1L, String::valueOf);
+        cache.get(2L, String::valueOf);
+        cache.get(1L, id -> "reloaded");
+        cache.get(3L, String::valueOf);
+
+        assertThat(cache.get(1L, id -> "reloaded")).isEqualTo("1");
+        assertThat(cache.get(2L, id -> "reloaded")).isEqualTo("reloaded");
+        CacheStats stats = cache.getStats();
+        assertThat(stats.getSize()).isEqualTo(2);
+        assertThat(stats.getHits()).isEqualTo(2);
+        assertThat(stats.getMisses()).isEqualTo(4);
+        assertThat(stats.getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    void loadStartedBeforeInvalidationIsNotCached() {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 10);
+
+        String loaded = cache.get(1L, id -> {
+            cache.invalidate(id); // Сущность изменилась, пока шла загрузка
+            return "stale";
+        });
+
+        assertThat(loaded).isEqualTo("stale");
+        assertThat(cache.get(1L, id -> "fresh")).isEqualTo("fresh");
+        assertThat(cache.getStats().getInvalidations()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidatedSlotIsReusedWithoutEviction() {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 2);
+        cache.get(1L, String::valueOf);
+        cache.get(2L, String::valueOf);
+
+        cache.invalidate(1L);
+        cache.get(3L, String::valueOf);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getStats().getEvictions()).isZero();
+        assertThat(cache.get(2L, id -> "reloaded")).isEqualTo("2");
+        assertThat(cache.get(3L, id -> "reloaded")).isEqualTo("3");
+    }
+
+    @Test
+    void hitsShareOneReadOnlySnapshotOfCachedFilm() {
+        EntityCache<Long, Film> cache = new EntityCache<>("films", 10, Film::readOnlyCopy);
+        Film loaded = cache.get(1L, id -> {
+            Film film = Film.builder().name("film").likes(IdSet.of(7)).build();
+            film.setId(id);
+            return film;
+        });
+        loaded.getLikes().add(8);
+
+        Film cached = cache.get(1L, id -> null);
+        assertThatThrownBy(() -> cached.getLikes().add(9)).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> cached.getGenres().clear()).isInstanceOf(UnsupportedOperationException.class);
+
+        Film again = cache.get(1L, id -> null);
+        assertThat(again).isSameAs(cached);
+        assertThat(again.getLikes().toArray()).containsExactly(7L);
+        assertThat(cache.getStats().getHits()).isEqualTo(2);
+    }
+
+    @Test
+    void getAllLoadsOnlyMissingKeysAndKeepsKeyOrder() {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 10);
+        cache.get(2L, String::valueOf);
+
+        List<String> values = cache.getAll(List.of(3L, 2L, 1L, 99L),
+                ids -> ids.stream().filter(id -> id != 99L).map(String::valueOf).collect(Collectors.toList()),
+                Long::valueOf);
+
+        assertThat(values).containsExactly("3", "2", "1");
+        assertThat(cache.getStats().getHits()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+}
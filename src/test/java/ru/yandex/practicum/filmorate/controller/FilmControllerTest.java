@@ -0,0 +1,216 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = FilmorateApplication.class)
+@AutoConfigureMockMvc
+class FilmControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void conditionalGetReturnsNotModifiedUntilFilmIsLiked() throws Exception {
+        long filmId = createFilm();
+        long userId = createUser();
+        String eTag = eTagOf(filmId);
+
+        mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().string(""));
+
+        mockMvc.perform(put("/films/{id}/like/{userId}", filmId, userId))
+                .andExpect(status().isOk());
+        String likedETag = mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.likes[0]").value(userId))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(likedETag).isNotNull().isNotEqualTo(eTag);
+
+        mockMvc.perform(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, likedETag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void pagesFollowCursorUntilTheLastPage() throws Exception {
+        List<Long> ids = createFilms(5);
+        List<Long> seen = new ArrayList<>();
+        String cursor = String.valueOf(ids.get(0) - 1);
+        while (cursor != null) {
+            MockHttpServletResponse response = mockMvc.perform(get("/films?after={after}&limit=2", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+            objectMapper.readTree(response.getContentAsString()).forEach(film -> seen.add(film.get("id").asLong()));
+            cursor = response.getHeader(Pagination.NEXT_CURSOR_HEADER);
+        }
+
+        assertThat(seen).isEqualTo(ids);
+    }
+
+    @Test
+    void pageSizeDefaultsTo100AndIsLimitedTo1000() throws Exception {
+        List<Long> ids = createFilms(101);
+        long after = ids.get(0) - 1;
+
+        mockMvc.perform(get("/films?after={after}", after))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(100))
+                .andExpect(header().string(Pagination.NEXT_CURSOR_HEADER, String.valueOf(ids.get(99))));
+        mockMvc.perform(get("/films?after={after}&limit=1000", after))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(101))
+                .andExpect(header().doesNotExist(Pagination.NEXT_CURSOR_HEADER));
+        mockMvc.perform(get("/films?limit=1001"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("limit не может быть больше 1000"));
+    }
+
+    @Test
+    void invalidCursorOrLimitIsRejected() throws Exception {
+        mockMvc.perform(get("/films?after=-1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("after не может быть отрицательным"));
+        mockMvc.perform(get("/films?after=abc"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Некорректное значение параметра after: abc"));
+        mockMvc.perform(get("/films?limit=0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("limit должен быть положительным"));
+    }
+
+    @Test
+    void popularCountIsPositiveAndLimitedTo1000() throws Exception {
+        mockMvc.perform(get("/films/popular?count=1000"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/films/popular?count=2000000000"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("count не может быть больше 1000"));
+        mockMvc.perform(get("/films/popular?count=-1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("count должен быть положительным"));
+    }
+
+    @Test
+    void batchRejectsOnlyFilmsWithInvalidGenres() throws Exception {
+        String film = "{\"name\":\"film\",\"description\":\"description\",\"releaseDate\":\"2000-01-01\","
+                + "\"duration\":100,\"mpa\":{\"id\":1}";
+        String batch = "[" + film + "}," + film + ",\"genres\":null}," + film + ",\"genres\":[{}]}," + film + "}]";
+
+        mockMvc.perform(post("/films/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ids.length()").value(4))
+                .andExpect(jsonPath("$.ids[0]").isNumber())
+                .andExpect(jsonPath("$.ids[1]").isEmpty())
+                .andExpect(jsonPath("$.ids[2]").isEmpty())
+                .andExpect(jsonPath("$.ids[3]").isNumber())
+                .andExpect(jsonPath("$.errors.length()").value(2))
+                .andExpect(jsonPath("$.errors[0].index").value(1))
+                .andExpect(jsonPath("$.errors[0].error").value("список жанров не может быть null"))
+                .andExpect(jsonPath("$.errors[1].index").value(2));
+    }
+
+    @Test
+    void allReturnsEveryFilmWithoutCursor() throws Exception {
+        List<Long> ids = createFilms(3);
+
+        mockMvc.perform(get("/films?all=true&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItems(ids.stream().map(Long::intValue).toArray(Integer[]::new))))
+                .andExpect(header().doesNotExist(Pagination.NEXT_CURSOR_HEADER));
+    }
+
+    private String eTagOf(long filmId) throws Exception {
+        return mockMvc.perform(get("/films/{id}", filmId))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private long createFilm() throws Exception {
+        String film = "{\"name\":\"film " + UUID.randomUUID() + "\",\"description\":\"description\","
+                + "\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}";
+        return idOf(mockMvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON).content(film))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+
+    @Test
+    void exportWritesOneFilmPerLine() throws Exception {
+        List<Long> ids = createFilms(3);
+
+        MvcResult started = mockMvc.perform(get("/films/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(NdjsonExport.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(body).endsWith("\n");
+        List<Long> exported = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            JsonNode film = objectMapper.readTree(line);
+            assertThat(film.isObject()).isTrue();
+            exported.add(film.get("id").asLong());
+        }
+        assertThat(exported).isSorted().containsAll(ids);
+    }
+
+    private List<Long> createFilms(int count) throws Exception {
+        String films = IntStream.range(0, count)
+                .mapToObj(i -> "{\"name\":\"film " + i + "\",\"description\":\"description\","
+                        + "\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}")
+                .collect(Collectors.joining(",", "[", "]"));
+        String body = mockMvc.perform(post("/films/batch").contentType(MediaType.APPLICATION_JSON).content(films))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<Long> ids = new ArrayList<>();
+        objectMapper.readTree(body).get("ids").forEach(id -> ids.add(id.asLong()));
+        return ids;
+    }
+
+    private long createUser() throws Exception {
+        String login = "user" + UUID.randomUUID().toString().replace("-", "");
+        String user = "{\"email\":\"" + login + "@mail.ru\",\"login\":\"" + login + "\",\"name\":\"" + login + "\","
+                + "\"birthday\":\"2000-01-01\"}";
+        return idOf(mockMvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON).content(user))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+
+    private long idOf(String body) throws Exception {
+        return objectMapper.readTree(body).get("id").asLong();
+    }
+}
@@ -0,0 +1,211 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.metrics.SqlStatements;
+import ru.yandex.practicum.filmorate.metrics.StatementBudget;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/**
+ * Каждый эндпоинт вызывается на данных, где фильмов, лайков, жанров и друзей больше, чем бюджет обработчика.
+ * Если какой-то обработчик начнет выполнять запрос на каждую строку, он выйдет за {@link StatementBudget},
+ * и тест покажет повторяющийся запрос.
+ */
+@SpringBootTest(classes = FilmorateApplication.class)
+@AutoConfigureMockMvc
+class StatementBudgetTest {
+
+    private static final int ROWS = 20;
+    // Больше, чем выгрузка раньше читала за одну порцию
+    private static final int EXPORT_ROWS = 1_200;
+    private static final long MISSING_ID = 999_999;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RequestMappingHandlerMapping handlerMapping;
+
+    private final Set<Method> called = new HashSet<>();
+
+    @Test
+    void everyEndpointStaysWithinStatementBudget() throws Exception {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            userIds.add(id(call(post("/users").content(user(i)))));
+        }
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            filmIds.add(id(call(post("/films").content(film(i, null)))));
+        }
+        call(post("/films/batch").content(IntStream.range(0, ROWS)
+                .mapToObj(i -> film(i, null)).collect(Collectors.joining(",", "[", "]"))));
+        call(post("/users/batch").content(IntStream.range(ROWS, 2 * ROWS)
+                .mapToObj(StatementBudgetTest::user).collect(Collectors.joining(",", "[", "]"))));
+
+        long filmId = filmIds.get(0);
+        long userId = userIds.get(0);
+        long otherId = userIds.get(1);
+        for (long id : userIds) {
+            call(put("/films/{id}/like/{userId}", filmId, id));
+            call(put("/films/{id}/like/{userId}", filmIds.get(1), id));
+        }
+        call(delete("/films/{id}/like/{userId}", filmId, otherId));
+        for (long id : userIds.subList(2, ROWS)) {
+            call(put("/users/{id}/friends/{friendId}", userId, id));
+            call(put("/users/{id}/friends/{friendId}", otherId, id));
+            call(put("/users/{id}/friends/{friendId}", id, userId));
+        }
+        call(delete("/users/{id}/friends/{friendId}", otherId, userIds.get(2)));
+        call(put("/films").content(film(0, filmId)));
+        call(put("/users").content(user(0).replace("{", "{\"id\":" + userId + ",")));
+
+        call(get("/films"));
+        call(get("/films?all=true"));
+        String filmETag = perform(get("/films/{id}", filmId)).getResponse().getHeader(HttpHeaders.ETAG);
+        call(get("/films/{id}", filmId).header(HttpHeaders.IF_NONE_MATCH, filmETag), 304);
+        call(get("/films/popular?count={count}", ROWS));
+        call(get("/films/popular?count={count}&genreId={genreId}&year={year}", ROWS, 1, 2000));
+        call(get("/films/search?q={q}&limit={limit}", "film", ROWS));
+        call(get("/films/export"));
+        call(get("/users"));
+        String userETag = perform(get("/users/{id}", userId)).getResponse().getHeader(HttpHeaders.ETAG);
+        call(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, userETag), 304);
+        call(get("/users/{id}/friends", userId));
+        call(get("/users/{id}/friends/common/{otherId}", userId, otherId));
+        call(get("/users/{id}/friends/suggestions", userId));
+        call(get("/users/{id}/recommendations", otherId));
+        call(get("/users/export"));
+        call(get("/genres"));
+        call(get("/genres/{id}", 1));
+        call(get("/mpa"));
+        call(get("/mpa/{id}", 1));
+        call(get("/internal/caches"));
+        call(get("/internal/metrics"));
+        call(get("/internal/counters/drift"));
+        call(post("/internal/counters/backfill"));
+
+        Set<Method> handlers = handlerMapping.getHandlerMethods().values().stream()
+                .filter(handler -> handler.getBeanType().getPackageName().startsWith("ru.yandex.practicum"))
+                .map(HandlerMethod::getMethod)
+                .collect(Collectors.toSet());
+        assertThat(called).as("эндпоинты без проверки бюджета").containsAll(handlers);
+    }
+
+    @Test
+    void errorResponsesStayWithinStatementBudget() throws Exception {
+        long userId = id(call(post("/users").content(user(-1))));
+        long otherId = id(call(post("/users").content(user(-2))));
+        long filmId = id(call(post("/films").content(film(0, null))));
+
+        call(delete("/users/{id}/friends/{friendId}", userId, otherId), 200);
+        call(delete("/users/{id}/friends/{friendId}", userId, MISSING_ID), 404);
+        call(put("/users/{id}/friends/{friendId}", userId, MISSING_ID), 404);
+        call(put("/users/{id}/friends/{friendId}", MISSING_ID, userId), 404);
+        call(put("/users").content(user(-3).replace("{", "{\"id\":" + MISSING_ID + ",")), 404);
+        call(get("/users/{id}", MISSING_ID), 404);
+        call(get("/users/{id}/friends", MISSING_ID), 404);
+        call(get("/users/{id}/friends/common/{otherId}", userId, MISSING_ID), 404);
+        call(get("/users/{id}/friends/suggestions", MISSING_ID), 404);
+        call(get("/users/{id}/recommendations", MISSING_ID), 404);
+        call(get("/users?after=-1"), 400);
+        call(post("/users/batch").content("[" + user(-4) + "," + user(-4) + "," + user(-5) + "]"), 200);
+
+        call(delete("/films/{id}/like/{userId}", filmId, userId), 404);
+        call(delete("/films/{id}/like/{userId}", MISSING_ID, userId), 404);
+        call(put("/films/{id}/like/{userId}", filmId, MISSING_ID), 404);
+        call(put("/films/{id}/like/{userId}", MISSING_ID, userId), 404);
+        call(put("/films").content(film(0, MISSING_ID)), 404);
+        call(get("/films/{id}", MISSING_ID), 404);
+        call(get("/films/popular?genreId={genreId}", MISSING_ID), 404);
+        call(get("/films?limit=0"), 400);
+        call(get("/genres/{id}", MISSING_ID), 404);
+        call(get("/mpa/{id}", MISSING_ID), 404);
+    }
+
+    @Test
+    void exportsStayWithinStatementBudgetForAnyNumberOfRows() throws Exception {
+        call(post("/films/batch").content(IntStream.range(0, EXPORT_ROWS)
+                .mapToObj(i -> film(i, null)).collect(Collectors.joining(",", "[", "]"))));
+        call(post("/users/batch").content(IntStream.range(0, EXPORT_ROWS)
+                .mapToObj(i -> user(10_000 + i)).collect(Collectors.joining(",", "[", "]"))));
+
+        assertThat(call(get("/films/export")).lines().count()).isGreaterThanOrEqualTo(EXPORT_ROWS);
+        assertThat(call(get("/users/export")).lines().count()).isGreaterThanOrEqualTo(EXPORT_ROWS);
+    }
+
+    private String call(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = perform(request);
+        assertThat(result.getResponse().getStatus()).isLessThan(400);
+        return result.getResponse().getContentAsString();
+    }
+
+    private void call(MockHttpServletRequestBuilder request, int expectedStatus) throws Exception {
+        assertThat(perform(request).getResponse().getStatus()).isEqualTo(expectedStatus);
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result;
+        try (SqlStatements.Scope scope = SqlStatements.open()) {
+            result = mockMvc.perform(request.contentType(MediaType.APPLICATION_JSON)).andReturn();
+            if (result.getRequest().isAsyncStarted()) {
+                result.getAsyncResult();
+                result = mockMvc.perform(asyncDispatch(result)).andReturn();
+            }
+            scope.close();
+
+            Method handler = ((HandlerMethod) result.getHandler()).getMethod();
+            StatementBudget budget = handler.getAnnotation(StatementBudget.class);
+            assertThat(budget).as("бюджет SQL-запросов обработчика %s", handler).isNotNull();
+            assertThat(scope.getCount())
+                    .as("%s %s: %s", result.getRequest().getMethod(), result.getRequest().getRequestURI(),
+                            scope.describe())
+                    .isLessThanOrEqualTo(scope.allowed(budget));
+            called.add(handler);
+        }
+        return result;
+    }
+
+    private long id(String body) throws Exception {
+        return objectMapper.readTree(body).get("id").asLong();
+    }
+
+    private static String film(int i, Long id) {
+        return "{" + (id == null ? "" : "\"id\":" + id + ",") + "\"name\":\"film " + i + "\",\"description\":\"d\","
+                + "\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":" + (i % 5 + 1) + "},"
+                + "\"genres\":[{\"id\":1},{\"id\":2},{\"id\":3},{\"id\":4}]}";
+    }
+
+    private static String user(int i) {
+        return "{\"email\":\"u" + i + "@mail.ru\",\"login\":\"u" + i + "\",\"name\":\"\","
+                + "\"birthday\":\"2000-01-01\"}";
+    }
+}
@@ -0,0 +1,225 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = FilmorateApplication.class)
+@AutoConfigureMockMvc
+class UserControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void friendsFromCreateRequestDoNotReachSuggestions() throws Exception {
+        long userId = createUser("");
+        long friendId = createUser("");
+        mockMvc.perform(put("/users/{id}/friends/{friendId}", userId, friendId))
+                .andExpect(status().isOk());
+
+        long created = createUser(",\"friends\":[" + friendId + "]");
+        String batch = "[" + user(",\"friends\":[" + friendId + "]") + "]";
+        long batchCreated = objectMapper.readTree(mockMvc.perform(post("/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString()).path("ids").get(0).asLong();
+
+        mockMvc.perform(get("/users/{id}/friends/suggestions", userId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/users/{id}/friends", created))
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/users/{id}/friends", batchCreated))
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    void batchRejectsOnlyUsersWithDuplicateEmails() throws Exception {
+        String existing = user("");
+        mockMvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON).content(existing))
+                .andExpect(status().isOk());
+        String first = user("");
+        String batch = "[" + user("") + "," + existing + "," + first + "," + first.replace("\"login\":\"",
+                "\"login\":\"copy") + "," + user("") + "]";
+
+        mockMvc.perform(post("/users/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ids.length()").value(5))
+                .andExpect(jsonPath("$.ids[0]").isNumber())
+                .andExpect(jsonPath("$.ids[1]").isEmpty())
+                .andExpect(jsonPath("$.ids[2]").isNumber())
+                .andExpect(jsonPath("$.ids[3]").isEmpty())
+                .andExpect(jsonPath("$.ids[4]").isNumber())
+                .andExpect(jsonPath("$.errors.length()").value(2))
+                .andExpect(jsonPath("$.errors[0].index").value(1))
+                .andExpect(jsonPath("$.errors[0].error")
+                        .value("значение уникального поля уже есть в базе или выше в загрузке"))
+                .andExpect(jsonPath("$.errors[1].index").value(3));
+    }
+
+    @Test
+    void conditionalGetReturnsNotModifiedUntilFriendshipChanges() throws Exception {
+        long userId = createUser("");
+        long friendId = createUser("");
+        String eTag = mockMvc.perform(get("/users/{id}", userId))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().string(""));
+
+        mockMvc.perform(put("/users/{id}/friends/{friendId}", userId, friendId))
+                .andExpect(status().isOk());
+        String addedETag = mockMvc.perform(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.friends[0].friendId").value(friendId))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(addedETag).isNotNull().isNotEqualTo(eTag);
+
+        mockMvc.perform(delete("/users/{id}/friends/{friendId}", userId, friendId))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, addedETag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.friends.length()").value(0))
+                .andExpect(header().string(HttpHeaders.ETAG, not(addedETag)));
+    }
+
+    @Test
+    void pagesFollowCursorUntilTheLastPage() throws Exception {
+        List<Long> ids = createUsers(5);
+        List<Long> seen = new ArrayList<>();
+        String cursor = String.valueOf(ids.get(0) - 1);
+        while (cursor != null) {
+            MockHttpServletResponse response = mockMvc.perform(get("/users?after={after}&limit=2", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+            objectMapper.readTree(response.getContentAsString()).forEach(user -> seen.add(user.get("id").asLong()));
+            cursor = response.getHeader(Pagination.NEXT_CURSOR_HEADER);
+        }
+
+        assertThat(seen).isEqualTo(ids);
+    }
+
+    @Test
+    void pageSizeDefaultsTo100AndIsLimitedTo1000() throws Exception {
+        List<Long> ids = createUsers(101);
+        long after = ids.get(0) - 1;
+
+        mockMvc.perform(get("/users?after={after}", after))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(100))
+                .andExpect(header().string(Pagination.NEXT_CURSOR_HEADER, String.valueOf(ids.get(99))));
+        mockMvc.perform(get("/users?after={after}&limit=1000", after))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(101))
+                .andExpect(header().doesNotExist(Pagination.NEXT_CURSOR_HEADER));
+        mockMvc.perform(get("/users?limit=1001"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("limit не может быть больше 1000"));
+    }
+
+    @Test
+    void invalidCursorOrLimitIsRejected() throws Exception {
+        mockMvc.perform(get("/users?after=-1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("after не может быть отрицательным"));
+        mockMvc.perform(get("/users?limit=abc"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Некорректное значение параметра limit: abc"));
+        mockMvc.perform(get("/users?limit=0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("limit должен быть положительным"));
+    }
+
+    @Test
+    void allReturnsEveryUserWithoutCursor() throws Exception {
+        List<Long> ids = createUsers(3);
+
+        mockMvc.perform(get("/users?all=true&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItems(ids.stream().map(Long::intValue).toArray(Integer[]::new))))
+                .andExpect(header().doesNotExist(Pagination.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void exportWritesOneUserPerLine() throws Exception {
+        List<Long> ids = createUsers(3);
+
+        MvcResult started = mockMvc.perform(get("/users/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(NdjsonExport.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(body).endsWith("\n");
+        List<Long> exported = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            JsonNode user = objectMapper.readTree(line);
+            assertThat(user.isObject()).isTrue();
+            exported.add(user.get("id").asLong());
+        }
+        assertThat(exported).isSorted().containsAll(ids);
+    }
+
+    private List<Long> createUsers(int count) throws Exception {
+        String users = IntStream.range(0, count)
+                .mapToObj(i -> user(""))
+                .collect(Collectors.joining(",", "[", "]"));
+        String body = mockMvc.perform(post("/users/batch").contentType(MediaType.APPLICATION_JSON).content(users))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<Long> ids = new ArrayList<>();
+        objectMapper.readTree(body).get("ids").forEach(id -> ids.add(id.asLong()));
+        return ids;
+    }
+
+    private long createUser(String extraFields) throws Exception {
+        String body = mockMvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON).content(user(extraFields)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("id").asLong();
+    }
+
+    private static String user(String extraFields) {
+        String login = "user" + UUID.randomUUID().toString().replace("-", "");
+        return "{\"email\":\"" + login + "@mail.ru\",\"login\":\"" + login + "\",\"name\":\"" + login + "\","
+                + "\"birthday\":\"2000-01-01\"" + extraFields + "}";
+    }
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistogramTest {
+
+    @Test
+    void bucketUpperBoundIsWithinOneEighthOfValue() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            long upperBound = Histogram.upperBound(Histogram.bucketOf(value));
+            assertThat(upperBound).isGreaterThanOrEqualTo(value);
+            assertThat(upperBound - value).isLessThanOrEqualTo(value / 8);
+        }
+    }
+
+    @Test
+    void quantilesFollowRecordedValues() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getSum()).isEqualTo(500_500_000L);
+        assertThat(histogram.getQuantile(0.5)).isBetween(500_000L, 500_000L * 9 / 8);
+        assertThat(histogram.getQuantile(0.99)).isBetween(990_000L, 990_000L * 9 / 8);
+        assertThat(new Histogram().getQuantile(0.5)).isZero();
+    }
+}
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlStatementsTest {
+
+    @Test
+    void repeatedShapesMergeStatementsThatDifferOnlyInLiteralsAndParameterLists() {
+        try (SqlStatements.Scope scope = SqlStatements.open()) {
+            SqlStatements.onStatement("select * from users where user_id = 1");
+            SqlStatements.onStatement("select *  from users\n where user_id = 2");
+            SqlStatements.onStatement("select * from films where film_id in (?, ?)");
+            SqlStatements.onStatement("select * from films where film_id in (?, ?, ?)");
+            SqlStatements.onStatement("select * from genres");
+            scope.close();
+            SqlStatements.onStatement("select * from genres");
+
+            assertThat(scope.getCount()).isEqualTo(5);
+            assertThat(scope.getRepeated()).containsExactly(
+                    Map.entry("select * from users where user_id = ?", 2L),
+                    Map.entry("select * from films where film_id in (?, ...)", 2L));
+        }
+    }
+
+    @Test
+    void scopeWithoutStatementTextsOnlyCounts() {
+        try (SqlStatements.Scope scope = SqlStatements.open(false)) {
+            SqlStatements.onStatement("select * from users where user_id = 1");
+            SqlStatements.onStatement("select * from users where user_id = 2");
+
+            assertThat(scope.getCount()).isEqualTo(2);
+            assertThat(scope.getRepeated()).isEmpty();
+        }
+    }
+}
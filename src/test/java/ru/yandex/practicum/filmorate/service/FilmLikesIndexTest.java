@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.storage.mem.InMemoryFilmStorage;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilmLikesIndexTest {
+
+    @Test
+    void recommendsFilmsOfSimilarUsersAndFollowsLikeChanges() {
+        FilmLikesIndex index = emptyIndex();
+        index.addLike(10, 1);
+        index.addLike(11, 1);
+        index.addLike(10, 2);
+        index.addLike(11, 2);
+        index.addLike(12, 2);
+        index.addLike(10, 3);
+        index.addLike(13, 3);
+        index.addLike(14, 4);
+
+        assertThat(index.recommend(1, 10)).containsExactly(12L, 13L);
+        assertThat(index.recommend(1, 1)).containsExactly(12L);
+
+        index.removeLike(12, 2);
+        assertThat(index.recommend(1, 10)).containsExactly(13L);
+
+        index.setLikes(13, IdSet.of(2));
+        assertThat(index.recommend(1, 10)).containsExactly(13L);
+        index.setLikes(13, IdSet.of());
+        assertThat(index.recommend(1, 10)).isEmpty();
+        assertThat(index.recommend(5, 10)).isEmpty();
+    }
+
+    @Test
+    void parallelScoringMatchesBruteForce() {
+        int users = 2000;
+        int films = 200;
+        FilmLikesIndex index = emptyIndex();
+        Map<Long, Set<Long>> filmsByUser = new HashMap<>();
+        Random random = new Random(7);
+        for (long userId = 1; userId <= users; userId++) {
+            for (long filmId = 1; filmId <= films; filmId++) {
+                if (random.nextInt(10) < 3) {
+                    index.addLike(filmId, userId);
+                    filmsByUser.computeIfAbsent(userId, id -> new TreeSet<>()).add(filmId);
+                }
+            }
+        }
+
+        for (long userId = 1; userId <= 20; userId++) {
+            assertThat(index.recommend(userId, 10)).isEqualTo(bruteForce(filmsByUser, userId, 10));
+        }
+    }
+
+    private static List<Long> bruteForce(Map<Long, Set<Long>> filmsByUser, long userId, int count) {
+        Set<Long> liked = filmsByUser.get(userId);
+        Map<Long, Integer> overlaps = new HashMap<>();
+        filmsByUser.forEach((otherId, films) -> {
+            int overlap = (int) films.stream().filter(liked::contains).count();
+            if (otherId != userId && overlap > 0) {
+                overlaps.put(otherId, overlap);
+            }
+        });
+
+        Map<Long, Integer> scores = new HashMap<>();
+        top(overlaps, 50).forEach(otherId -> filmsByUser.get(otherId).stream()
+                .filter(filmId -> !liked.contains(filmId))
+                .forEach(filmId -> scores.merge(filmId, overlaps.get(otherId), Integer::sum)));
+        return top(scores, count);
+    }
+
+    private static List<Long> top(Map<Long, Integer> counts, int limit) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.naturalOrder())))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static FilmLikesIndex emptyIndex() {
+        FilmLikesIndex index = new FilmLikesIndex(new InMemoryFilmStorage(null, null, null), 50, 1_000_000);
+        index.refresh();
+        return index;
+    }
+}
@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikesCount;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.mem.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FilmPopularityIndexTest {
+
+    @Test
+    void filteredRankingsFollowLikesGenresAndReleaseYear() {
+        FilmPopularityIndex index = new FilmPopularityIndex(new InMemoryFilmStorage(null, null, null));
+        index.refresh();
+        index.setFilm(film(1, 2000, 1, 2), 3);
+        index.setFilm(film(2, 2000, 2), 5);
+        index.setFilm(film(3, 2010, 1), 4);
+        index.setFilm(film(4, 2010), 0);
+
+        assertThat(index.getTopFilmIds(10, null, null)).containsExactly(2L, 3L, 1L, 4L);
+        assertThat(index.getTopFilmIds(10, 1, null)).containsExactly(3L, 1L);
+        assertThat(index.getTopFilmIds(10, null, 2010)).containsExactly(3L, 4L);
+        assertThat(index.getTopFilmIds(10, 2, 2000)).containsExactly(2L, 1L);
+        assertThat(index.getTopFilmIds(1, 2, 2000)).containsExactly(2L);
+        assertThat(index.getTopFilmIds(10, 3, null)).isEmpty();
+
+        index.increment(1, 1);
+        index.increment(1, 2);
+        index.increment(1, 3);
+        index.decrement(2, 1);
+        assertThat(index.getTopFilmIds(10, 2, 2000)).containsExactly(1L, 2L);
+        assertThat(index.getTopFilmIds(10, 1, null)).containsExactly(1L, 3L);
+
+        index.setFilm(film(1, 2010, 3), 6);
+        assertThat(index.getTopFilmIds(10, 1, null)).containsExactly(3L);
+        assertThat(index.getTopFilmIds(10, null, 2000)).containsExactly(2L);
+        assertThat(index.getTopFilmIds(10, 3, 2010)).containsExactly(1L);
+        assertThat(index.getTopFilmIds(10, null, null)).containsExactly(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void changesAlreadyCountedAtTheirVersionAreSkipped() {
+        FilmPopularityIndex index = new FilmPopularityIndex(new InMemoryFilmStorage(null, null, null));
+        index.refresh();
+        Film first = film(1, 2000);
+        first.setVersion(5);
+        index.setFilm(first, 2);
+        index.setFilm(film(2, 2000), 3);
+
+        index.increment(1, 4);
+        index.increment(1, 5);
+        assertThat(index.getTopFilmIds(10, null, null)).containsExactly(2L, 1L);
+
+        index.increment(1, 7);
+        index.increment(1, 6);
+        assertThat(index.getTopFilmIds(10, null, null)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void refreshServesOldRankingWhileBuildingAndReplaysChangesMadeMeanwhile() throws Exception {
+        FilmStorage storage = mock(FilmStorage.class);
+        Map<Long, LikesCount> counts = new HashMap<>(Map.of(
+                1L, LikesCount.builder().likes(1).version(1).build(),
+                2L, LikesCount.builder().likes(2).version(2).build()));
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(storage.getLikesCounts()).thenReturn(new HashMap<>(counts)).thenAnswer(invocation -> {
+            reading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return counts;
+        });
+        when(storage.getReleaseDatesAndGenres()).thenReturn(List.of(film(1, 2000), film(2, 2000)));
+        FilmPopularityIndex index = new FilmPopularityIndex(storage);
+        index.refresh();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> refresh = executor.submit(index::refresh);
+            reading.await();
+            assertThat(index.getTopFilmIds(10, null, null)).containsExactly(2L, 1L);
+
+            // Лайк версии 2 уже вошел в новое чтение, лайки версий 3 и 4 — нет
+            counts.put(1L, LikesCount.builder().likes(2).version(2).build());
+            index.increment(1, 2);
+            index.increment(1, 3);
+            index.increment(1, 4);
+            assertThat(index.getTopFilmIds(10, null, null)).containsExactly(1L, 2L);
+
+            release.countDown();
+            refresh.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+
+        // У первого фильма ровно 4 лайка: при равенстве он выше второго, при 5 лайках у второго — ниже
+        index.increment(2, 3);
+        index.increment(2, 4);
+        assertThat(index.getTopFilmIds(10, null, 2000)).containsExactly(1L, 2L);
+        index.increment(2, 5);
+        assertThat(index.getTopFilmIds(10, null, 2000)).containsExactly(2L, 1L);
+    }
+
+    private static Film film(long id, int year, int... genreIds) {
+        return Film.builder()
+                .id(id)
+                .releaseDate(LocalDate.of(year, 1, 1))
+                .genres(Arrays.stream(genreIds)
+                        .mapToObj(genreId -> Genre.builder().id(genreId).build())
+                        .collect(Collectors.toCollection(TreeSet::new)))
+                .build();
+    }
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.mem.InMemoryFilmStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilmSearchIndexTest {
+
+    @Test
+    void ranksNameMatchesAboveDescriptionAndExactAbovePrefix() {
+        FilmSearchIndex index = emptyIndex();
+        index.index(film(1, "Ёлки", "Новогодняя комедия"));
+        index.index(film(2, "Ирония судьбы", "Новогодняя комедия про ёлку и баню"));
+        index.index(film(3, "Елки-палки", "Комедия"));
+        index.index(film(4, "The Matrix", "Neo learns the truth"));
+
+        assertThat(index.search("елки", 0, 10)).containsExactly(1L, 3L);
+        assertThat(index.search("ЁЛК", 0, 10)).containsExactly(1L, 3L, 2L);
+        assertThat(index.search("новогодняя ёлк", 0, 10)).containsExactly(1L, 2L);
+        assertThat(index.search("комедия", 0, 10)).containsExactly(1L, 2L, 3L);
+        assertThat(index.search("комедия", 1, 1)).containsExactly(2L);
+        assertThat(index.search("комедия", 5, 10)).isEmpty();
+        assertThat(index.search("matrix, neo!", 0, 10)).containsExactly(4L);
+        assertThat(index.search("matrix дюна", 0, 10)).isEmpty();
+        assertThat(index.search(" ,.- ", 0, 10)).isEmpty();
+    }
+
+    @Test
+    void shortQueryWordsMatchOnlyWholeWords() {
+        FilmSearchIndex index = emptyIndex();
+        index.index(film(1, "Брат 2", "Продолжение"));
+        index.index(film(2, "Брат 21", "Бразильский боевик"));
+        index.index(film(3, "Бриллиантовая рука", "Комедия"));
+
+        assertThat(index.search("2", 0, 10)).containsExactly(1L);
+        assertThat(index.search("бр", 0, 10)).isEmpty();
+        assertThat(index.search("бра", 0, 10)).containsExactly(2L, 1L);
+        assertThat(index.search("брат 21", 0, 10)).containsExactly(2L);
+    }
+
+    @Test
+    void followsFilmUpdates() {
+        FilmSearchIndex index = emptyIndex();
+        index.index(film(1, "Брат", "Криминальная драма"));
+        index.index(film(2, "Брат 2", "Продолжение"));
+
+        index.index(film(1, "Сестры", "Драма"));
+        assertThat(index.search("брат", 0, 10)).containsExactly(2L);
+        assertThat(index.search("сестр", 0, 10)).containsExactly(1L);
+        assertThat(index.search("криминал", 0, 10)).isEmpty();
+        assertThat(index.search("драма", 0, 10)).containsExactly(1L);
+    }
+
+    private static Film film(long id, String name, String description) {
+        Film film = Film.builder()
+                .name(name)
+                .description(description)
+                .build();
+        film.setId(id);
+        return film;
+    }
+
+    private static FilmSearchIndex emptyIndex() {
+        FilmSearchIndex index = new FilmSearchIndex(new InMemoryFilmStorage(null, null, null));
+        index.refresh();
+        return index;
+    }
+}
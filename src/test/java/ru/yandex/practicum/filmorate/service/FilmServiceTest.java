@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest
+class FilmServiceTest {
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FilmLikesIndex likesIndex;
+
+    @Autowired
+    private FilmPopularityIndex popularityIndex;
+
+    @Autowired
+    private FilmSearchIndex searchIndex;
+
+    @Autowired
+    private FilmStorage filmStorage;
+
+    @Autowired
+    private GenreStorage genreStorage;
+
+    @Autowired
+    private MpaStorage mpaStorage;
+
+    @Test
+    void concurrentAddAndDeleteOfOneLikeKeepLikesIndexInSyncWithStorage() throws Exception {
+        Film film = filmService.create(film());
+        Film other = filmService.create(film());
+        User user = userService.create(user());
+        User neighbor = userService.create(user());
+        filmService.addLike(film.getId(), neighbor.getId());
+        filmService.addLike(other.getId(), neighbor.getId());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 200; i++) {
+                CyclicBarrier start = new CyclicBarrier(2);
+                Future<?> add = executor.submit(() -> {
+                    start.await();
+                    return filmService.addLike(film.getId(), user.getId());
+                });
+                Future<?> delete = executor.submit(() -> {
+                    start.await();
+                    try {
+                        return filmService.deleteLike(film.getId(), user.getId());
+                    } catch (DataNotFoundException e) {
+                        return null; // Лайк еще не добавлен
+                    }
+                });
+                add.get();
+                delete.get();
+
+                // Индекс рекомендует фильм соседа, только если считает, что пользователь лайкнул общий фильм
+                boolean liked = filmService.getFilmById(film.getId()).getLikes().contains(user.getId());
+                assertThat(likesIndex.recommend(user.getId(), 10))
+                        .isEqualTo(liked ? List.of(other.getId()) : List.of());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void likesOfOneFilmByDifferentUsersDoNotWaitForEachOther() throws Exception {
+        Film film = filmService.create(film());
+        User slow = userService.create(user());
+        User fast = userService.create(user());
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilmStorage storage = mock(FilmStorage.class, delegatesTo(filmStorage));
+        doAnswer(invocation -> {
+            slowStarted.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return filmStorage.addLike(film.getId(), slow.getId());
+        }).when(storage).addLike(film.getId(), slow.getId());
+        FilmService service = new FilmService(storage, popularityIndex, likesIndex, searchIndex, userService,
+                genreStorage, mpaStorage, new EntityCache<>("films", 0, Film::readOnlyCopy));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Film> slowLike = executor.submit(() -> service.addLike(film.getId(), slow.getId()));
+            slowStarted.await();
+            // Лайк другого пользователя не ждет, пока первый лайк пишется в хранилище
+            Film liked = executor.submit(() -> service.addLike(film.getId(), fast.getId())).get(5, TimeUnit.SECONDS);
+            assertThat(liked.getLikes().toArray()).containsExactly(fast.getId());
+
+            release.countDown();
+            assertThat(slowLike.get().getLikes().toArray()).containsExactlyInAnyOrder(slow.getId(), fast.getId());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static Film film() {
+        return Film.builder()
+                .name("film " + UUID.randomUUID())
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(Mpa.builder().id(1).build())
+                .genres(Set.of())
+                .build();
+    }
+
+    private static User user() {
+        String login = "user" + UUID.randomUUID().toString().replace("-", "");
+        return User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build();
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.FriendSet;
+import ru.yandex.practicum.filmorate.storage.mem.InMemoryUserStorage;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FriendGraphTest {
+
+    @Test
+    void suggestsFriendsOfFriendsAndFollowsFriendshipChanges() {
+        FriendGraph graph = emptyGraph(1_000);
+        graph.addFriendship(1, 2);
+        graph.addFriendship(1, 3);
+        graph.addFriendship(4, 2);
+        graph.addFriendship(4, 3);
+        graph.addFriendship(5, 3);
+        graph.addFriendship(2, 1);
+        graph.addFriendship(6, 7);
+
+        assertThat(graph.suggest(1, 10)).containsExactly(4L, 5L);
+        assertThat(graph.suggest(1, 1)).containsExactly(4L);
+
+        graph.removeFriendship(4, 2);
+        assertThat(graph.suggest(1, 10)).containsExactly(4L, 5L);
+        graph.removeFriendship(4, 3);
+        assertThat(graph.suggest(1, 10)).containsExactly(5L);
+
+        FriendSet friends = new FriendSet();
+        friends.add(3L, false);
+        friends.add(5L, true);
+        graph.setFriends(1, friends);
+        assertThat(graph.suggest(1, 10)).isEmpty();
+        assertThat(graph.suggest(8, 10)).isEmpty();
+    }
+
+    @Test
+    void suggestionsMatchBruteForceAcrossCompactions() {
+        int users = 300;
+        FriendGraph graph = emptyGraph(16);
+        Map<Long, Set<Long>> friendsByUser = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            long userId = 1 + random.nextInt(users);
+            long friendId = 1 + random.nextInt(users);
+            if (userId == friendId) {
+                continue;
+            }
+            if (random.nextInt(4) == 0) {
+                graph.removeFriendship(userId, friendId);
+                friendsByUser.getOrDefault(userId, new TreeSet<>()).remove(friendId);
+            } else {
+                graph.addFriendship(userId, friendId);
+                friendsByUser.computeIfAbsent(userId, id -> new TreeSet<>()).add(friendId);
+            }
+        }
+
+        for (long userId = 1; userId <= 30; userId++) {
+            assertThat(graph.suggest(userId, 10)).isEqualTo(bruteForce(friendsByUser, userId, 10));
+        }
+    }
+
+    private static List<Long> bruteForce(Map<Long, Set<Long>> friendsByUser, long userId, int limit) {
+        Set<Long> friends = friendsByUser.getOrDefault(userId, Set.of());
+        Map<Long, Integer> mutualFriends = new HashMap<>();
+        friendsByUser.forEach((otherId, otherFriends) -> {
+            int mutual = (int) otherFriends.stream().filter(friends::contains).count();
+            if (otherId != userId && !friends.contains(otherId) && mutual > 0) {
+                mutualFriends.put(otherId, mutual);
+            }
+        });
+        return mutualFriends.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.naturalOrder())))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static FriendGraph emptyGraph(int compactThreshold) {
+        FriendGraph graph = new FriendGraph(new InMemoryUserStorage(), compactThreshold, 1_000_000);
+        graph.refresh();
+        return graph;
+    }
+}
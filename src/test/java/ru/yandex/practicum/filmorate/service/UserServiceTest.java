@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.model.FriendSet;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class UserServiceTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FriendGraph friendGraph;
+
+    @Test
+    void concurrentUpdateAndFriendshipChangesKeepFriendGraphInSyncWithStorage() throws Exception {
+        User user = userService.create(user());
+        User friend = userService.create(user());
+        User neighbor = userService.create(user());
+        userService.addFriend(neighbor.getId(), friend.getId());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 200; i++) {
+                // Дружба добавляется, пока обновление убирает ее из тела, и удаляется, пока обновление ее добавляет
+                boolean add = i % 2 == 0;
+                User changed = User.builder()
+                        .email(user.getEmail())
+                        .login(user.getLogin())
+                        .name(user.getName())
+                        .birthday(user.getBirthday())
+                        .friends(new FriendSet())
+                        .build();
+                changed.setId(user.getId());
+                if (!add) {
+                    changed.getFriends().add(friend.getId(), false);
+                }
+
+                CyclicBarrier start = new CyclicBarrier(2);
+                Future<?> friendship = executor.submit(() -> {
+                    start.await();
+                    return add
+                            ? userService.addFriend(user.getId(), friend.getId())
+                            : userService.deleteFriend(user.getId(), friend.getId());
+                });
+                Future<?> update = executor.submit(() -> {
+                    start.await();
+                    return userService.update(changed);
+                });
+                friendship.get();
+                update.get();
+
+                // Граф предлагает соседа, только если считает, что пользователь дружит с общим другом
+                boolean friends = userService.getUserById(user.getId()).getFriends().contains(friend.getId());
+                assertThat(friendGraph.suggest(user.getId(), 10))
+                        .isEqualTo(friends ? List.of(neighbor.getId()) : List.of());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static User user() {
+        String login = "user" + UUID.randomUUID().toString().replace("-", "");
+        return User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build();
+    }
+}
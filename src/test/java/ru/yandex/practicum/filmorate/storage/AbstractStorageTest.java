@@ -0,0 +1,335 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSet;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikesCount;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Общий контракт хранилищ фильмов и пользователей. Каждая реализация проверяется одним и тем же набором тестов.
+ */
+abstract class AbstractStorageTest {
+
+    @Autowired
+    protected FilmStorage filmStorage;
+
+    @Autowired
+    protected UserStorage userStorage;
+
+    @Test
+    void createAndGetFilmResolvesMpaAndGenres() {
+        Film film = filmStorage.create(film(Set.of(genre(2), genre(1))));
+
+        Film stored = filmStorage.getFilmById(film.getId());
+
+        assertThat(stored.getName()).isEqualTo(film.getName());
+        assertThat(stored.getMpa().getName()).isEqualTo("PG-13");
+        assertThat(stored.getGenres()).extracting(Genre::getId).containsExactly(1, 2);
+        assertThat(stored.getGenres()).extracting(Genre::getName).doesNotContainNull();
+        assertThat(stored.getLikes().isEmpty()).isTrue();
+    }
+
+    @Test
+    void changingReturnedGenresAndMpaDoesNotChangeStoredFilm() {
+        Film film = filmStorage.create(film(Set.of(genre(1))));
+
+        Film returned = filmStorage.getFilmById(film.getId());
+        returned.setMpa(Mpa.builder().id(1).name("changed").build());
+        returned.getGenres().clear();
+
+        Film stored = filmStorage.getFilmById(film.getId());
+        assertThat(stored.getMpa().getName()).isEqualTo("PG-13");
+        assertThat(stored.getGenres()).extracting(Genre::getId).containsExactly(1);
+    }
+
+    @Test
+    void updateAndGetUnknownFilmThrowDataNotFound() {
+        Film film = film(Set.of());
+        film.setId(Long.MAX_VALUE);
+
+        assertThatThrownBy(() -> filmStorage.update(film)).isInstanceOf(DataNotFoundException.class);
+        assertThatThrownBy(() -> filmStorage.getFilmById(Long.MAX_VALUE)).isInstanceOf(DataNotFoundException.class);
+    }
+
+    @Test
+    void failedCreateLeavesNoTraceOfFilm() {
+        Film film = film(Set.of(genre(Integer.MAX_VALUE)));
+        User user = userStorage.create(user());
+
+        assertThatThrownBy(() -> filmStorage.create(film)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> filmStorage.getFilmById(film.getId())).isInstanceOf(DataNotFoundException.class);
+        assertThatThrownBy(() -> filmStorage.getFilmVersion(film.getId()))
+                .isInstanceOf(DataNotFoundException.class);
+        assertThatThrownBy(() -> filmStorage.addLike(film.getId(), user.getId()))
+                .isInstanceOf(DataNotFoundException.class);
+    }
+
+    @Test
+    void addLikeIsIdempotentAndRemoveLikeRequiresExistingLike() {
+        Film film = filmStorage.create(film(Set.of()));
+        User user = userStorage.create(user());
+
+        long added = filmStorage.addLike(film.getId(), user.getId());
+        assertThat(added).isPositive().isEqualTo(filmStorage.getFilmVersion(film.getId()));
+        assertThat(filmStorage.addLike(film.getId(), user.getId())).isZero();
+        assertThat(filmStorage.getFilmById(film.getId()).getLikes().toArray()).containsExactly(user.getId());
+
+        long removed = filmStorage.removeLike(film.getId(), user.getId());
+        assertThat(removed).isGreaterThan(added).isEqualTo(filmStorage.getFilmVersion(film.getId()));
+        assertThat(filmStorage.getFilmById(film.getId()).getLikes().isEmpty()).isTrue();
+        assertThatThrownBy(() -> filmStorage.removeLike(film.getId(), user.getId()))
+                .isInstanceOf(DataNotFoundException.class);
+    }
+
+    @Test
+    void likeWithUnknownFilmOrUserThrowsDataNotFound() {
+        Film film = filmStorage.create(film(Set.of()));
+        User user = userStorage.create(user());
+
+        assertThatThrownBy(() -> filmStorage.addLike(Long.MAX_VALUE, user.getId()))
+                .isInstanceOf(DataNotFoundException.class)
+                .hasMessageContaining("фильм");
+        assertThatThrownBy(() -> filmStorage.addLike(film.getId(), Long.MAX_VALUE))
+                .isInstanceOf(DataNotFoundException.class)
+                .hasMessageContaining("пользовател");
+    }
+
+    @Test
+    void likesCountsFollowLikes() {
+        User first = userStorage.create(user());
+        User second = userStorage.create(user());
+        Film noLikes = filmStorage.create(film(Set.of()));
+        Film oneLike = filmStorage.create(film(Set.of()));
+        Film twoLikes = filmStorage.create(film(Set.of()));
+        Film alsoOneLike = filmStorage.create(film(Set.of()));
+        filmStorage.addLike(twoLikes.getId(), first.getId());
+        filmStorage.addLike(twoLikes.getId(), second.getId());
+        filmStorage.addLike(alsoOneLike.getId(), first.getId());
+        filmStorage.addLike(oneLike.getId(), second.getId());
+
+        // Число лайков отдается вместе с текущей версией фильма
+        assertThat(filmStorage.getLikesCounts())
+                .containsEntry(twoLikes.getId(), likesCount(twoLikes, 2))
+                .containsEntry(oneLike.getId(), likesCount(oneLike, 1))
+                .containsEntry(alsoOneLike.getId(), likesCount(alsoOneLike, 1))
+                .containsEntry(noLikes.getId(), likesCount(noLikes, 0));
+    }
+
+    @Test
+    void releaseDatesAndGenresFollowFilmUpdates() {
+        Film film = filmStorage.create(film(Set.of(genre(2), genre(1))));
+        film.setReleaseDate(LocalDate.of(1999, 5, 5));
+        film.setGenres(Set.of(genre(3)));
+        filmStorage.update(film);
+
+        Film stored = filmStorage.getReleaseDatesAndGenres().stream()
+                .filter(other -> other.getId().equals(film.getId()))
+                .findAny()
+                .orElseThrow();
+
+        assertThat(stored.getReleaseDate()).isEqualTo(LocalDate.of(1999, 5, 5));
+        assertThat(stored.getGenres()).extracting(Genre::getId).containsExactly(3);
+    }
+
+    @Test
+    void pagesAndStreamFollowIdOrder() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(filmStorage.create(film(Set.of())).getId());
+        }
+        long afterId = ids.get(0) - 1;
+
+        assertThat(filmStorage.getPage(afterId, 2)).extracting(Film::getId).containsExactly(ids.get(0), ids.get(1));
+        assertThat(filmStorage.getPage(ids.get(1), 2)).extracting(Film::getId).startsWith(ids.get(2));
+
+        List<Long> streamed = new ArrayList<>();
+        filmStorage.streamAll(film -> streamed.add(film.getId()));
+        assertThat(streamed).isSorted().containsAll(ids);
+        assertThat(filmStorage.getFilmsByIds(List.of(ids.get(2), ids.get(0))))
+                .extracting(Film::getId).containsExactly(ids.get(2), ids.get(0));
+    }
+
+    @Test
+    void streamAllLoadsGenresLikesAndFriends() {
+        User user = userStorage.create(user());
+        User friend = userStorage.create(user());
+        User lonely = userStorage.create(user());
+        userStorage.addFriendship(user.getId(), friend.getId());
+        userStorage.addFriendship(user.getId(), lonely.getId());
+        userStorage.addFriendship(lonely.getId(), user.getId());
+        Film liked = filmStorage.create(film(Set.of()));
+        Film withGenres = filmStorage.create(film(Set.of(genre(1), genre(2))));
+        Film plain = filmStorage.create(film(Set.of()));
+        filmStorage.addLike(liked.getId(), user.getId());
+        filmStorage.addLike(liked.getId(), friend.getId());
+
+        List<Film> films = new ArrayList<>();
+        filmStorage.streamAll(films::add);
+        for (Film film : List.of(liked, withGenres, plain)) {
+            assertThat(films).contains(filmStorage.getFilmById(film.getId()));
+        }
+        List<User> users = new ArrayList<>();
+        userStorage.streamAll(users::add);
+        for (User stored : List.of(user, friend, lonely)) {
+            assertThat(users).contains(userStorage.getUserById(stored.getId()));
+        }
+    }
+
+    @Test
+    void createAllAssignsIdsInInputOrder() {
+        List<Film> films = filmStorage.createAll(List.of(film(Set.of(genre(1))), film(Set.of()),
+                film(Set.of(genre(3)))));
+        List<User> users = userStorage.createAll(List.of(user(), user()));
+
+        assertThat(films).extracting(Film::getId).doesNotContainNull().isSorted();
+        assertThat(filmStorage.getFilmById(films.get(2).getId()).getGenres())
+                .extracting(Genre::getId).containsExactly(3);
+        assertThat(users).extracting(User::getId).doesNotContainNull().isSorted();
+        assertThat(userStorage.getUserById(users.get(1).getId()).getLogin()).isEqualTo(users.get(1).getLogin());
+    }
+
+    @Test
+    void duplicateEmailIsRejectedOnCreateUpdateAndCreateAll() {
+        User first = userStorage.create(user());
+        User second = userStorage.create(user());
+        User copy = user();
+        copy.setEmail(first.getEmail());
+        User fresh = user();
+
+        assertThatThrownBy(() -> userStorage.create(copy)).isInstanceOf(DuplicateKeyException.class);
+        assertThatThrownBy(() -> userStorage.createAll(List.of(fresh, copy)))
+                .isInstanceOf(DuplicateKeyException.class);
+        User taken = userStorage.getUserById(second.getId());
+        taken.setEmail(first.getEmail());
+        assertThatThrownBy(() -> userStorage.update(taken)).isInstanceOf(DuplicateKeyException.class);
+        assertThat(userStorage.getUserById(second.getId()).getEmail()).isEqualTo(second.getEmail());
+
+        User released = userStorage.getUserById(first.getId());
+        released.setEmail(user().getEmail());
+        userStorage.update(released);
+        User reused = user();
+        reused.setEmail(first.getEmail());
+        User freshAgain = user();
+        freshAgain.setEmail(fresh.getEmail());
+        assertThat(userStorage.createAll(List.of(reused, freshAgain))).extracting(User::getId).doesNotContainNull();
+    }
+
+    @Test
+    void versionGrowsOnEveryChangeIncludingLikesAndFriendships() {
+        Film film = filmStorage.create(film(Set.of()));
+        User user = userStorage.create(user());
+        User friend = userStorage.create(user());
+        long filmVersion = filmStorage.getFilmVersion(film.getId());
+        long userVersion = userStorage.getUserVersion(user.getId());
+
+        filmStorage.addLike(film.getId(), user.getId());
+        assertThat(filmStorage.getFilmVersion(film.getId())).isGreaterThan(filmVersion);
+        filmVersion = filmStorage.getFilmVersion(film.getId());
+        assertThat(filmStorage.getFilmById(film.getId()).getVersion()).isEqualTo(filmVersion);
+        filmStorage.addLike(film.getId(), user.getId());
+        assertThat(filmStorage.getFilmVersion(film.getId())).isEqualTo(filmVersion);
+
+        userStorage.addFriendship(user.getId(), friend.getId());
+        assertThat(userStorage.getUserVersion(user.getId())).isGreaterThan(userVersion);
+        userVersion = userStorage.getUserVersion(user.getId());
+        assertThat(userStorage.getUserById(user.getId()).getVersion()).isEqualTo(userVersion);
+        userStorage.update(userStorage.getUserById(user.getId()));
+        assertThat(userStorage.getUserVersion(user.getId())).isGreaterThan(userVersion);
+
+        assertThatThrownBy(() -> filmStorage.getFilmVersion(Long.MAX_VALUE)).isInstanceOf(DataNotFoundException.class);
+        assertThatThrownBy(() -> userStorage.getUserVersion(Long.MAX_VALUE)).isInstanceOf(DataNotFoundException.class);
+    }
+
+    @Test
+    void friendshipOperationsTouchOneEdge() {
+        User user = userStorage.create(user());
+        User friend = userStorage.create(user());
+        User other = userStorage.create(user());
+
+        userStorage.addFriendship(user.getId(), friend.getId());
+        userStorage.addFriendship(user.getId(), friend.getId());
+        userStorage.addFriendship(user.getId(), other.getId());
+        userStorage.confirmFriendship(user.getId(), other.getId());
+
+        FriendSet friends = userStorage.getUserById(user.getId()).getFriends();
+        assertThat(friends.friendIds().toArray()).containsExactlyInAnyOrder(friend.getId(), other.getId());
+        assertThat(friends.isConfirmed(friend.getId())).isFalse();
+        assertThat(friends.isConfirmed(other.getId())).isTrue();
+        assertThat(userStorage.getUserById(friend.getId()).getFriends().isEmpty()).isTrue();
+        assertThat(userStorage.getFriends(user.getId(), 1, 1)).extracting(User::getId).containsExactly(other.getId());
+
+        userStorage.removeFriendship(user.getId(), friend.getId());
+        assertThat(userStorage.getFriends(user.getId(), null, 0)).extracting(User::getId)
+                .containsExactly(other.getId());
+        assertThatThrownBy(() -> userStorage.confirmFriendship(user.getId(), friend.getId()))
+                .isInstanceOf(DataNotFoundException.class);
+        assertThatThrownBy(() -> userStorage.addFriendship(user.getId(), Long.MAX_VALUE))
+                .isInstanceOf(DataNotFoundException.class);
+    }
+
+    @Test
+    void commonFriendsAreReturnedWithoutNestedFriends() {
+        User user = userStorage.create(user());
+        User other = userStorage.create(user());
+        User common = userStorage.create(user());
+        User notCommon = userStorage.create(user());
+        userStorage.addFriendship(user.getId(), common.getId());
+        userStorage.addFriendship(user.getId(), notCommon.getId());
+        userStorage.addFriendship(other.getId(), common.getId());
+        userStorage.addFriendship(common.getId(), user.getId());
+
+        List<User> commonFriends = userStorage.getCommonFriends(user.getId(), other.getId());
+
+        assertThat(commonFriends).extracting(User::getId).containsExactly(common.getId());
+        assertThat(commonFriends.get(0).getFriends().isEmpty()).isTrue();
+        assertThatThrownBy(() -> userStorage.getCommonFriends(user.getId(), Long.MAX_VALUE))
+                .isInstanceOf(DataNotFoundException.class);
+    }
+
+    private LikesCount likesCount(Film film, int likes) {
+        return LikesCount.builder()
+                .likes(likes)
+                .version(filmStorage.getFilmVersion(film.getId()))
+                .build();
+    }
+
+    protected static Film film(Set<Genre> genres) {
+        return Film.builder()
+                .name("film " + UUID.randomUUID())
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(Mpa.builder().id(3).build())
+                .genres(genres)
+                .build();
+    }
+
+    private static Genre genre(int id) {
+        return Genre.builder().id(id).build();
+    }
+
+    protected static User user() {
+        String login = "user" + UUID.randomUUID().toString().replace("-", "");
+        return User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build();
+    }
+}
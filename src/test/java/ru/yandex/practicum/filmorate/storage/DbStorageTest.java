@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.CounterDrift;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSet;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class DbStorageTest extends AbstractStorageTest {
+
+    @Autowired
+    private CounterStorage counterStorage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void countersFollowWritesAndBackfillRepairsDrift() {
+        Film film = filmStorage.create(film(Set.of()));
+        User user = userStorage.create(user());
+        User friend = userStorage.create(user());
+        filmStorage.addLike(film.getId(), user.getId());
+        userStorage.addFriendship(user.getId(), friend.getId());
+
+        CounterDrift drift = counterStorage.checkDrift();
+        assertThat(drift.getFilmIds()).doesNotContain(film.getId());
+        assertThat(drift.getUserIds()).doesNotContain(user.getId());
+
+        jdbcTemplate.update("update films set likes_count = 7 where film_id = ?", film.getId());
+        jdbcTemplate.update("update users set friends_count = 7 where user_id = ?", user.getId());
+        drift = counterStorage.checkDrift();
+        assertThat(drift.getFilmIds()).contains(film.getId());
+        assertThat(drift.getUserIds()).contains(user.getId());
+
+        counterStorage.backfill();
+        assertThat(counterStorage.checkDrift().isEmpty()).isTrue();
+        assertThat(filmStorage.getLikesCounts().get(film.getId()).getLikes()).isEqualTo(1);
+    }
+
+    @Test
+    void failedUserUpdateLeavesUserAndFriendsUnchanged() {
+        User user = userStorage.create(user());
+        User friend = userStorage.create(user());
+        userStorage.addFriendship(user.getId(), friend.getId());
+        User before = userStorage.getUserById(user.getId());
+
+        User changed = userStorage.getUserById(user.getId());
+        changed.setName("changed");
+        FriendSet friends = new FriendSet();
+        friends.add(Long.MAX_VALUE, false);
+        changed.setFriends(friends);
+
+        assertThatThrownBy(() -> userStorage.update(changed)).isInstanceOf(RuntimeException.class);
+        assertThat(userStorage.getUserById(user.getId())).isEqualTo(before);
+    }
+
+    @Test
+    void concurrentUserUpdatesAndFriendshipChangesKeepFriendsCount() throws Exception {
+        User user = userStorage.create(user());
+        List<Long> friendIds = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            friendIds.add(userStorage.create(user()).getId());
+        }
+
+        AtomicInteger applied = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> updates = executor.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    User changed = userStorage.getUserById(user.getId());
+                    FriendSet friends = new FriendSet();
+                    if (i % 2 == 0) {
+                        friendIds.subList(0, 4).forEach(id -> friends.add(id, false));
+                    }
+                    changed.setFriends(friends);
+                    ignoreConflicts(() -> userStorage.update(changed), applied);
+                }
+            });
+            Future<?> friendships = executor.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    Long friendId = friendIds.get(4 + i % 4);
+                    ignoreConflicts(() -> userStorage.addFriendship(user.getId(), friendId), applied);
+                    ignoreConflicts(() -> userStorage.removeFriendship(user.getId(), friendId), applied);
+                }
+            });
+            updates.get();
+            friendships.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(applied.get()).isPositive();
+        assertThat(counterStorage.checkDrift().getUserIds()).doesNotContain(user.getId());
+    }
+
+    // Конфликт блокировок между параллельными изменениями одной дружбы откатывает одну из транзакций целиком.
+    // Остальные ошибки не ожидаются и валят тест
+    private static void ignoreConflicts(Runnable operation, AtomicInteger applied) {
+        try {
+            operation.run();
+            applied.incrementAndGet();
+        } catch (ConcurrencyFailureException ignored) {
+        }
+    }
+}
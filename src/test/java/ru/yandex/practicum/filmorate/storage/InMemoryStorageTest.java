@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest
+@ActiveProfiles("in-memory")
+class InMemoryStorageTest extends AbstractStorageTest {
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.DataNotFoundException;
+import ru.yandex.practicum.filmorate.metrics.SqlStatements;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.db.WriteBehindFilmStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval-ms=3600000"
+})
+class WriteBehindStorageTest extends AbstractStorageTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void pendingLikesAreVisibleBeforeFlushAndCollapsePerPair() {
+        WriteBehindFilmStorage storage = (WriteBehindFilmStorage) filmStorage;
+        Film film = filmStorage.create(film(Set.of()));
+        User user = userStorage.create(user());
+        User other = userStorage.create(user());
+
+        filmStorage.addLike(film.getId(), user.getId());
+        filmStorage.addLike(film.getId(), other.getId());
+        filmStorage.removeLike(film.getId(), other.getId());
+
+        assertThat(filmStorage.getFilmById(film.getId()).getLikes().toArray()).containsExactly(user.getId());
+        assertThat(filmStorage.getLikesCounts().get(film.getId()).getLikes()).isEqualTo(1);
+        assertThat(likesInDb(film)).isZero();
+
+        storage.flush();
+
+        assertThat(likesInDb(film)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("select likes_count from films where film_id = ?",
+                Integer.class, film.getId())).isEqualTo(1);
+        assertThat(filmStorage.getFilmById(film.getId()).getLikes().toArray()).containsExactly(user.getId());
+    }
+
+    @Test
+    void likesOfLoadedFilmAndCheckedUsersDoNotQueryDatabase() {
+        WriteBehindFilmStorage storage = (WriteBehindFilmStorage) filmStorage;
+        Film film = filmStorage.create(film(Set.of()));
+        User user = userStorage.create(user());
+        User other = userStorage.create(user());
+        filmStorage.addLike(film.getId(), user.getId());
+        filmStorage.addLike(film.getId(), other.getId());
+        storage.flush();
+
+        long version;
+        try (SqlStatements.Scope scope = SqlStatements.open()) {
+            filmStorage.removeLike(film.getId(), user.getId());
+            assertThat(filmStorage.addLike(film.getId(), other.getId())).isZero();
+            version = filmStorage.addLike(film.getId(), user.getId());
+
+            assertThat(scope.getCount()).isZero();
+        }
+        storage.flush();
+        assertThat(filmStorage.getFilmVersion(film.getId())).isEqualTo(version);
+    }
+
+    @Test
+    void concurrentLikesAndUnlikesOfOnePairKeepStateConsistent() throws Exception {
+        WriteBehindFilmStorage storage = (WriteBehindFilmStorage) filmStorage;
+        Film film = filmStorage.create(film(Set.of()));
+        User user = userStorage.create(user());
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(executor.submit(() -> {
+                for (int j = 0; j < 200; j++) {
+                    if (filmStorage.addLike(film.getId(), user.getId()) != 0) {
+                        added.incrementAndGet();
+                    }
+                    try {
+                        filmStorage.removeLike(film.getId(), user.getId());
+                        removed.incrementAndGet();
+                    } catch (DataNotFoundException e) {
+                        // Лайк уже снят параллельным потоком
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        int liked = added.get() - removed.get();
+        assertThat(liked).isBetween(0, 1);
+        assertThat(filmStorage.getLikesCounts().get(film.getId()).getLikes()).isEqualTo(liked);
+        storage.flush();
+        assertThat(likesInDb(film)).isEqualTo(liked);
+    }
+
+    private Integer likesInDb(Film film) {
+        return jdbcTemplate.queryForObject("select count(*) from likes where film_id = ?", Integer.class, film.getId());
+    }
+}